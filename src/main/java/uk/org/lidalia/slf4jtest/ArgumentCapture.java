@@ -0,0 +1,61 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.Map;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Immutable configuration of how the arguments of logging calls are captured: by a snapshot function registered for the
+ * most recently registered type the argument is an instance of, or else by a default snapshot function.
+ */
+final class ArgumentCapture {
+
+    static final ArgumentCapture LIVE = new ArgumentCapture(
+            ArgumentSnapshots.retain(), ImmutableMap.<Class<?>, Function<Object, ?>>of());
+
+    private final Function<Object, ?> defaultSnapshot;
+    private final ImmutableMap<Class<?>, Function<Object, ?>> snapshotsByType;
+
+    private ArgumentCapture(
+            final Function<Object, ?> defaultSnapshot, final ImmutableMap<Class<?>, Function<Object, ?>> snapshotsByType) {
+        this.defaultSnapshot = defaultSnapshot;
+        this.snapshotsByType = snapshotsByType;
+    }
+
+    ArgumentCapture withDefault(final Function<Object, ?> snapshot) {
+        return new ArgumentCapture(snapshot, snapshotsByType);
+    }
+
+    ArgumentCapture with(final Class<?> type, final Function<Object, ?> snapshot) {
+        final ImmutableMap.Builder<Class<?>, Function<Object, ?>> snapshots = ImmutableMap.builder();
+        snapshots.put(type, snapshot);
+        for (final Map.Entry<Class<?>, Function<Object, ?>> entry: snapshotsByType.entrySet()) {
+            if (!entry.getKey().equals(type)) {
+                snapshots.put(entry);
+            }
+        }
+        return new ArgumentCapture(defaultSnapshot, snapshots.build());
+    }
+
+    boolean isLive() {
+        return this == LIVE;
+    }
+
+    Object[] capture(final Object[] arguments) {
+        final Object[] captured = new Object[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            captured[i] = arguments[i] == null ? null : snapshotFor(arguments[i].getClass()).apply(arguments[i]);
+        }
+        return captured;
+    }
+
+    private Function<Object, ?> snapshotFor(final Class<?> argumentType) {
+        for (final Map.Entry<Class<?>, Function<Object, ?>> entry: snapshotsByType.entrySet()) {
+            if (entry.getKey().isAssignableFrom(argumentType)) {
+                return entry.getValue();
+            }
+        }
+        return defaultSnapshot;
+    }
+}
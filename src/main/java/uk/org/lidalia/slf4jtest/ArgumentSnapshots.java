@@ -0,0 +1,67 @@
+package uk.org.lidalia.slf4jtest;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Ways of converting the arguments of a logging call into bounded, immutable snapshots at the time they are captured, for
+ * use with {@link TestLoggerFactory#setArgumentSnapshots(Function)} and
+ * {@link TestLoggerFactory#setArgumentSnapshot(Class, Function)}.  Null arguments are never passed to them.
+ */
+public final class ArgumentSnapshots {
+
+    /**
+     * @param maxLength the maximum length of the snapshot
+     * @return a snapshot function that keeps boxed primitives, enums and strings up to maxLength long as they are, and
+     *         otherwise captures the argument's toString, truncated to maxLength characters followed by "..." if longer
+     */
+    public static Function<Object, Object> truncatedToString(final int maxLength) {
+        checkArgument(maxLength >= 0, "maxLength must not be negative, was %s", maxLength);
+        return new Function<Object, Object>() {
+            @Override
+            public Object apply(final Object argument) {
+                if (isSmallAndImmutable(argument) && !(argument instanceof String)) {
+                    return argument;
+                }
+                final String description = String.valueOf(argument);
+                return description.length() <= maxLength ? description : description.substring(0, maxLength) + "...";
+            }
+        };
+    }
+
+    /**
+     * @return a snapshot function that keeps boxed primitives, enums and strings as they are, and otherwise
+     *         captures the argument's class name and identity hash code as Object's toString would, without calling the
+     *         argument's own toString
+     */
+    public static Function<Object, Object> typeAndIdentity() {
+        return new Function<Object, Object>() {
+            @Override
+            public Object apply(final Object argument) {
+                if (isSmallAndImmutable(argument)) {
+                    return argument;
+                }
+                return argument.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(argument));
+            }
+        };
+    }
+
+    /**
+     * @return a snapshot function that retains the argument itself
+     */
+    public static Function<Object, Object> retain() {
+        return Functions.identity();
+    }
+
+    private static boolean isSmallAndImmutable(final Object argument) {
+        return argument instanceof String || argument instanceof Boolean || argument instanceof Character
+                || argument instanceof Enum
+                || argument instanceof Number && argument.getClass().getPackage() == Long.class.getPackage();
+    }
+
+    private ArgumentSnapshots() {
+        throw new UnsupportedOperationException("Not instantiable");
+    }
+}
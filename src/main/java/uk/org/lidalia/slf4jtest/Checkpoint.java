@@ -0,0 +1,51 @@
+package uk.org.lidalia.slf4jtest;
+
+import uk.org.lidalia.lang.Identity;
+import uk.org.lidalia.lang.RichObject;
+
+/**
+ * <p>
+ * A point in the sequence of events logged on a {@link TestLogger} or {@link TestLoggerFactory}, by ANY thread, from which
+ * the events logged afterwards can be read without copying those logged before.  It consists of a generation, which is
+ * incremented each time the events are cleared, and a position within that generation's events.
+ * </p>
+ * <p>
+ * A checkpoint holds no events: it is resolved against the events currently stored each time it is read from, so events
+ * that have since been cleared, drained, evicted or expired are neither returned nor kept reachable by it.
+ * </p>
+ */
+public final class Checkpoint extends RichObject {
+
+    @Identity private final LoggingEventStore store;
+    @Identity private final long generation;
+    @Identity private final int position;
+
+    Checkpoint(final LoggingEventStore store, final long generation, final int position) {
+        super();
+        this.store = store;
+        this.generation = generation;
+        this.position = position;
+    }
+
+    /**
+     * @return the number of times the events had been cleared when this checkpoint was taken
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return the number of events logged in this checkpoint's generation before it was taken
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    LoggingEventStore getStore() {
+        return store;
+    }
+
+    boolean isAfter(final Checkpoint other) {
+        return generation > other.generation || generation == other.generation && position > other.position;
+    }
+}
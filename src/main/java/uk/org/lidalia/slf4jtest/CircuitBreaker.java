@@ -0,0 +1,119 @@
+package uk.org.lidalia.slf4jtest;
+
+import org.joda.time.DateTimeUtils;
+
+import com.google.common.base.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Limits the number of events captured, in total and within any one second, so that code logging in a runaway loop fails
+ * fast rather than exhausting the heap.  Once either limit is crossed the breaker opens: the logging call that crossed it
+ * fails with a diagnostic naming the logger, the message template and the rate, and every later event is only counted.
+ * The rate is measured over a sliding window, holding the timestamps of the events captured within the last second in a
+ * ring which grows only as far as the rate reached, so no one second span, however it falls, can exceed the limit.
+ */
+final class CircuitBreaker {
+
+    private static final long ONE_SECOND = 1000L;
+    private static final int INITIAL_CAPACITY = 16;
+
+    static final CircuitBreaker NONE = new CircuitBreaker("", Long.MAX_VALUE, Integer.MAX_VALUE);
+
+    private final String scope;
+    private final long maxEvents;
+    private final int maxEventsPerSecond;
+    private final boolean unlimited;
+    private long events = 0;
+    /** The timestamps of the events captured within the last second, oldest first, as a ring starting at recentStart. */
+    private long[] recent = new long[INITIAL_CAPACITY];
+    private int recentStart = 0;
+    private int recentSize = 0;
+    private long uncapturedEvents = 0;
+    private volatile String diagnostic = null;
+
+    /**
+     * @param scope a description of what the limits apply to, for the diagnostic
+     * @param maxEvents the maximum number of events to capture
+     * @param maxEventsPerSecond the maximum number of events to capture within any one second
+     */
+    CircuitBreaker(final String scope, final long maxEvents, final int maxEventsPerSecond) {
+        checkArgument(maxEvents > 0, "maxEvents must be positive, was %s", maxEvents);
+        checkArgument(maxEventsPerSecond > 0, "maxEventsPerSecond must be positive, was %s", maxEventsPerSecond);
+        this.scope = scope;
+        this.maxEvents = maxEvents;
+        this.maxEventsPerSecond = maxEventsPerSecond;
+        this.unlimited = maxEvents == Long.MAX_VALUE && maxEventsPerSecond == Integer.MAX_VALUE;
+    }
+
+    /**
+     * @param loggerName the name of the logger the event is being logged on
+     * @param format the message template of the event
+     * @return true if the event should be captured, false if the breaker is open and it should only be counted
+     * @throws IllegalStateException if this event crossed one of the limits
+     */
+    boolean admit(final String loggerName, final String format) {
+        if (unlimited) {
+            return true;
+        }
+        synchronized (this) {
+            if (diagnostic != null) {
+                uncapturedEvents++;
+                return false;
+            }
+            final long now = DateTimeUtils.currentTimeMillis();
+            forgetBefore(now);
+            events++;
+            final int windowEvents = recentSize + 1;
+            final long windowMillis = recentSize == 0 ? 0 : now - recent[recentStart];
+            if (events > maxEvents || windowEvents > maxEventsPerSecond) {
+                uncapturedEvents++;
+                diagnostic = scope + " exceeded its limit of "
+                        + (events > maxEvents ? maxEvents + " events" : maxEventsPerSecond + " events per second")
+                        + ": logger " + loggerName + " was logging \"" + format + "\" at " + windowEvents + " events in "
+                        + windowMillis + "ms; further events are counted but not captured";
+                throw new IllegalStateException(diagnostic);
+            }
+            remember(now);
+            return true;
+        }
+    }
+
+    /**
+     * Drops the timestamps a second or more before now, or all of them if the clock has gone back.
+     */
+    private void forgetBefore(final long now) {
+        while (recentSize > 0) {
+            final long oldest = recent[recentStart];
+            if (now - oldest < ONE_SECOND && oldest <= now) {
+                return;
+            }
+            recentStart = (recentStart + 1) % recent.length;
+            recentSize--;
+        }
+    }
+
+    private void remember(final long now) {
+        if (recentSize == recent.length) {
+            final long[] grown = new long[recent.length * 2];
+            for (int index = 0; index < recentSize; index++) {
+                grown[index] = recent[(recentStart + index) % recent.length];
+            }
+            recent = grown;
+            recentStart = 0;
+        }
+        recent[(recentStart + recentSize++) % recent.length] = now;
+    }
+
+    Optional<String> getDiagnostic() {
+        return Optional.fromNullable(diagnostic);
+    }
+
+    boolean isOpen() {
+        return diagnostic != null;
+    }
+
+    synchronized long getUncapturedEventCount() {
+        return uncapturedEvents;
+    }
+}
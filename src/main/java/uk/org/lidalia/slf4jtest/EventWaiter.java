@@ -0,0 +1,127 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+
+import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Blocks a thread until a {@link LoggingEventStore} has received a number of events matching a predicate.  The waiter is
+ * registered as a listener on the store, so it first counts the matching events already stored and is then told of each
+ * new event as it is added; the waiting thread is only signalled when the required count is reached, so there is no
+ * polling and no copying of events.  The predicate is applied on the logging thread; if it throws, the waiter fails
+ * rather than the logging call, and the waiting thread is woken to rethrow the failure.
+ */
+final class EventWaiter implements LoggingEventStore.Listener {
+
+    static Optional<LoggingEvent> awaitEvent(
+            final LoggingEventStore store,
+            final Predicate<LoggingEvent> predicate,
+            final long timeout,
+            final TimeUnit unit) throws InterruptedException {
+        final EventWaiter waiter = new EventWaiter(predicate, 1);
+        return waiter.await(store, timeout, unit) ? fromNullable(waiter.firstMatch) : Optional.<LoggingEvent>absent();
+    }
+
+    static boolean awaitCount(
+            final LoggingEventStore store,
+            final Predicate<LoggingEvent> predicate,
+            final int count,
+            final long timeout,
+            final TimeUnit unit) throws InterruptedException {
+        checkArgument(count >= 0, "count must not be negative, was %s", count);
+        return new EventWaiter(predicate, count).await(store, timeout, unit);
+    }
+
+    private final Predicate<LoggingEvent> predicate;
+    private final int required;
+    private final Lock lock = new ReentrantLock();
+    private final Condition satisfied = lock.newCondition();
+    private int matched = 0;
+    private LoggingEvent firstMatch;
+    private RuntimeException failure;
+
+    private EventWaiter(final Predicate<LoggingEvent> predicate, final int required) {
+        this.predicate = checkNotNull(predicate);
+        this.required = required;
+    }
+
+    private boolean await(final LoggingEventStore store, final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        store.addListener(this);
+        try {
+            long remainingNanos = unit.toNanos(timeout);
+            lock.lock();
+            try {
+                while (matched < required) {
+                    if (failure != null) {
+                        throw new IllegalStateException("Predicate " + predicate + " threw while waiting", failure);
+                    }
+                    if (remainingNanos <= 0) {
+                        return false;
+                    }
+                    remainingNanos = satisfied.awaitNanos(remainingNanos);
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            store.removeListener(this);
+        }
+    }
+
+    @Override
+    public void added(final LoggingEvent event) {
+        final boolean matches;
+        try {
+            matches = predicate.apply(event);
+        } catch (final RuntimeException e) {
+            fail(e);
+            return;
+        }
+        if (matches) {
+            lock.lock();
+            try {
+                if (firstMatch == null) {
+                    firstMatch = event;
+                }
+                if (++matched == required) {
+                    satisfied.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void fail(final RuntimeException e) {
+        lock.lock();
+        try {
+            if (failure == null) {
+                failure = e;
+                satisfied.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void cleared() {
+        // events that have already matched still count, even though they are no longer stored
+    }
+
+    @Override
+    public void removed(final List<LoggingEvent> events) {
+        // as when cleared, events that have already matched still count
+    }
+}
@@ -0,0 +1,75 @@
+package uk.org.lidalia.slf4jtest;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+
+/**
+ * A pattern registered on a {@link TestLoggerFactory} via {@link TestLoggerFactory#expect(Predicate)} or
+ * {@link TestLoggerFactory#forbid(Predicate)}, matched against each event as it is logged from then on.
+ */
+public final class Expectation {
+
+    private final Predicate<LoggingEvent> predicate;
+    private final boolean forbidden;
+    private volatile LoggingEvent firstMatch;
+    private volatile RuntimeException failure;
+
+    Expectation(final Predicate<LoggingEvent> predicate, final boolean forbidden) {
+        this.predicate = predicate;
+        this.forbidden = forbidden;
+    }
+
+    /**
+     * @return true if this expectation is for an event that must not be logged
+     */
+    public boolean isForbidden() {
+        return forbidden;
+    }
+
+    /**
+     * @return true if an expected event has been logged, or a forbidden one has not, and the predicate has not thrown
+     */
+    public boolean isSatisfied() {
+        return failure == null && forbidden != (firstMatch != null);
+    }
+
+    /**
+     * @return the exception the predicate threw when checking an event, if it has; no further events are checked
+     */
+    public Optional<RuntimeException> getFailure() {
+        return Optional.fromNullable(failure);
+    }
+
+    /**
+     * @return the first event logged that matched this expectation, if any
+     */
+    public Optional<LoggingEvent> getFirstMatch() {
+        return Optional.fromNullable(firstMatch);
+    }
+
+    /**
+     * @return true if this is the first match
+     */
+    synchronized boolean matched(final LoggingEvent event) {
+        if (firstMatch == null) {
+            firstMatch = event;
+            return true;
+        }
+        return false;
+    }
+
+    boolean matches(final LoggingEvent event) {
+        return predicate.apply(event);
+    }
+
+    void failed(final RuntimeException e) {
+        failure = e;
+    }
+
+    @Override
+    public String toString() {
+        return (forbidden ? "forbidden " : "expected ") + predicate
+                + (firstMatch == null ? "" : ", first matched by " + firstMatch)
+                + (failure == null ? "" : ", failed with " + failure);
+    }
+}
@@ -0,0 +1,86 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Joiner;
+
+/**
+ * The {@link Expectation}s registered on a {@link TestLoggerFactory}.  Each logged event is checked only against the
+ * expectations still outstanding: an expected event is dropped from the check as soon as it is matched, while a forbidden
+ * event is checked for until the expectations are cleared.  Checking costs a single volatile read when there are none.
+ * An expectation whose predicate throws fails with that exception and is dropped from the check too, so the exception
+ * never escapes into the logging call.
+ */
+final class Expectations {
+
+    private static final Expectation[] NONE = new Expectation[0];
+
+    private final List<Expectation> all = new ArrayList<>();
+    private volatile Expectation[] outstanding = NONE;
+
+    synchronized Expectation add(final Expectation expectation) {
+        all.add(expectation);
+        outstanding = Arrays.copyOf(outstanding, outstanding.length + 1);
+        outstanding[outstanding.length - 1] = expectation;
+        return expectation;
+    }
+
+    /**
+     * @throws AssertionError if the event matches a forbidden expectation
+     */
+    void check(final LoggingEvent event) {
+        for (final Expectation expectation: outstanding) {
+            final boolean matches;
+            try {
+                matches = expectation.matches(event);
+            } catch (final RuntimeException e) {
+                expectation.failed(e);
+                drop(expectation);
+                continue;
+            }
+            if (matches) {
+                if (expectation.isForbidden()) {
+                    expectation.matched(event);
+                    throw new AssertionError("Forbidden event logged: " + event + " matched " + expectation);
+                } else if (expectation.matched(event)) {
+                    drop(expectation);
+                }
+            }
+        }
+    }
+
+    private synchronized void drop(final Expectation expectation) {
+        final List<Expectation> remaining = new ArrayList<>(Arrays.asList(outstanding));
+        remaining.remove(expectation);
+        outstanding = remaining.toArray(new Expectation[remaining.size()]);
+    }
+
+    /**
+     * @throws AssertionError listing every expectation not satisfied
+     */
+    synchronized void verify() {
+        final List<Expectation> unsatisfied = new ArrayList<>();
+        for (final Expectation expectation: all) {
+            if (!expectation.isSatisfied()) {
+                unsatisfied.add(expectation);
+            }
+        }
+        if (!unsatisfied.isEmpty()) {
+            final AssertionError error = new AssertionError("Unsatisfied expectations:\n" + Joiner.on('\n').join(unsatisfied));
+            for (final Expectation expectation: unsatisfied) {
+                if (expectation.getFailure().isPresent()) {
+                    error.initCause(expectation.getFailure().get());
+                    break;
+                }
+            }
+            throw error;
+        }
+    }
+
+    synchronized void clear() {
+        all.clear();
+        outstanding = NONE;
+    }
+}
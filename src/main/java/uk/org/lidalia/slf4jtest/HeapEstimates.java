@@ -0,0 +1,99 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.Map;
+
+import com.google.common.base.Optional;
+
+/**
+ * Rough estimates of the heap occupied by common structures, assuming a 64 bit JVM with compressed references.  They are
+ * intended to show the order of magnitude of memory held, not to be exact.
+ */
+final class HeapEstimates {
+
+    static final int OBJECT_HEADER = 12;
+    static final int ARRAY_HEADER = 16;
+    static final int REFERENCE = 4;
+    private static final int HASH_MAP_ENTRY = 32;
+    private static final int HASH_MAP = 48;
+    private static final int STRING = 24;
+    private static final int BOXED_OR_UNKNOWN = 16;
+    private static final int LOGGING_EVENT_REFERENCES = 8;
+    private static final int IMMUTABLE_LIST = 24;
+    private static final int THROWABLE_FIELDS = 5;
+    private static final int STACK_TRACE_ELEMENT = 32;
+    private static final int MAX_CAUSES = 10;
+
+    static long align(final long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    static long intArray(final int length) {
+        return align(ARRAY_HEADER + 4L * length);
+    }
+
+    static long referenceArray(final int length) {
+        return align(ARRAY_HEADER + (long) REFERENCE * length);
+    }
+
+    static long string(final String value) {
+        return value == null ? 0 : STRING + align(ARRAY_HEADER + 2L * value.length());
+    }
+
+    static long hashMap(final int entries) {
+        final int tableSize = Integer.highestOneBit(entries * 2 + 1);
+        return HASH_MAP + referenceArray(tableSize) + (long) HASH_MAP_ENTRY * entries;
+    }
+
+    /**
+     * @return the heap retained by the event: the event itself, its MDC, arguments and throwable, and its message;
+     *         constants and strings shared with other events are counted for every event, except its thread name which
+     *         is shared with the other events its thread logs
+     */
+    static long loggingEvent(final LoggingEvent event) {
+        long bytes = align(OBJECT_HEADER + REFERENCE * LOGGING_EVENT_REFERENCES + 8) + string(event.getMessage());
+        if (!event.getMdc().isEmpty()) {
+            bytes += hashMap(event.getMdc().size());
+            for (final Map.Entry<String, String> entry: event.getMdc().entrySet()) {
+                bytes += string(entry.getKey()) + string(entry.getValue());
+            }
+        }
+        if (!event.getArguments().isEmpty()) {
+            bytes += IMMUTABLE_LIST + referenceArray(event.getArguments().size());
+            for (final Object argument: event.getArguments()) {
+                bytes += argument instanceof String ? string((String) argument)
+                        : argument instanceof Optional ? 0 : BOXED_OR_UNKNOWN;
+            }
+        }
+        if (event.getThrowable().isPresent()) {
+            bytes += throwable(event.getThrowable().get());
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the heap retained by the throwable, its stack trace and its causes and their suppressed throwables, to a
+     *         limited depth; anything else its fields reference is not counted
+     */
+    static long throwable(final Throwable throwable) {
+        return throwable(throwable, MAX_CAUSES);
+    }
+
+    private static long throwable(final Throwable throwable, final int maxDepth) {
+        long bytes = 0;
+        Throwable current = throwable;
+        for (int depth = 0; current != null && depth < maxDepth; depth++) {
+            final int frames = current.getStackTrace().length;
+            bytes += align(OBJECT_HEADER + REFERENCE * THROWABLE_FIELDS) + string(current.getMessage())
+                    + referenceArray(frames) + (long) STACK_TRACE_ELEMENT * frames;
+            for (final Throwable suppressed: current.getSuppressed()) {
+                bytes += throwable(suppressed, maxDepth - depth - 1);
+            }
+            current = current.getCause() == current ? null : current.getCause();
+        }
+        return bytes;
+    }
+
+    private HeapEstimates() {
+        throw new UnsupportedOperationException("Not instantiable");
+    }
+}
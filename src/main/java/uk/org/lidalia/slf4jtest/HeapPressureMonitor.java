@@ -0,0 +1,71 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Sets a usage threshold on each heap memory pool that supports one and asks a {@link TestLoggerFactory} to shed its low
+ * priority events whenever the JVM reports that a pool has crossed it.  Usage thresholds are global to the JVM, so only one
+ * monitor should be started at a time.
+ */
+final class HeapPressureMonitor implements NotificationListener {
+
+    private final TestLoggerFactory testLoggerFactory;
+    private final List<MemoryPoolMXBean> pools = new ArrayList<>();
+    private final NotificationEmitter emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+
+    private HeapPressureMonitor(final TestLoggerFactory testLoggerFactory) {
+        this.testLoggerFactory = testLoggerFactory;
+    }
+
+    /**
+     * @param testLoggerFactory the factory to shed events from
+     * @param heapFraction the fraction of each pool's maximum size at which to shed, greater than 0 and at most 1
+     * @return a started monitor
+     */
+    static HeapPressureMonitor start(final TestLoggerFactory testLoggerFactory, final double heapFraction) {
+        checkArgument(heapFraction > 0 && heapFraction <= 1, "heapFraction must be in (0, 1], was %s", heapFraction);
+        final HeapPressureMonitor monitor = new HeapPressureMonitor(testLoggerFactory);
+        for (final MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+            final long max = pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported() && max > 0) {
+                pool.setUsageThreshold((long) (max * heapFraction));
+                monitor.pools.add(pool);
+            }
+        }
+        monitor.emitter.addNotificationListener(monitor, null, null);
+        return monitor;
+    }
+
+    /**
+     * Stops listening and clears the usage thresholds this monitor set.
+     */
+    void stop() {
+        try {
+            emitter.removeNotificationListener(this);
+        } catch (ListenerNotFoundException e) {
+            throw new IllegalStateException("Heap pressure monitor was not listening", e);
+        }
+        for (final MemoryPoolMXBean pool: pools) {
+            pool.setUsageThreshold(0);
+        }
+    }
+
+    @Override
+    public void handleNotification(final Notification notification, final Object handback) {
+        if (MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+            testLoggerFactory.shedLowPriorityEvents();
+        }
+    }
+}
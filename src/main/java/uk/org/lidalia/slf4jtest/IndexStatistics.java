@@ -0,0 +1,51 @@
+package uk.org.lidalia.slf4jtest;
+
+import uk.org.lidalia.lang.Identity;
+import uk.org.lidalia.lang.RichObject;
+
+/**
+ * The size and cost of an index over the events currently stored by a {@link TestLoggerFactory}.
+ */
+public final class IndexStatistics extends RichObject {
+
+    @Identity private final int keys;
+    @Identity private final long postings;
+    @Identity private final long estimatedBytes;
+    @Identity private final long buildTimeNanos;
+
+    IndexStatistics(final int keys, final long postings, final long estimatedBytes, final long buildTimeNanos) {
+        super();
+        this.keys = keys;
+        this.postings = postings;
+        this.estimatedBytes = estimatedBytes;
+        this.buildTimeNanos = buildTimeNanos;
+    }
+
+    /**
+     * @return the number of distinct keys in the index
+     */
+    public int getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return the total number of event positions held across all keys
+     */
+    public long getPostings() {
+        return postings;
+    }
+
+    /**
+     * @return a rough estimate of the heap occupied by the index, in bytes
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * @return the total time spent adding events to the index, in nanoseconds
+     */
+    public long getBuildTimeNanos() {
+        return buildTimeNanos;
+    }
+}
@@ -0,0 +1,128 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import uk.org.lidalia.slf4jext.ConventionalLevelHierarchy;
+import uk.org.lidalia.slf4jext.Level;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Immutable set of levels configured for points in the logger name hierarchy, as in "com.acme=INFO, com.acme.db=DEBUG".  A
+ * logger takes the level configured for the nearest of its own name and its ancestors' names, the ancestors of "a.b.c" being
+ * "a.b", "a" and finally {@link Logger#ROOT_LOGGER_NAME}, and enables that level and those above it.  Each change produces a
+ * new configuration with a higher version, which loggers compare against the version they last resolved their levels from.
+ */
+final class LevelConfiguration {
+
+    static final LevelConfiguration EMPTY = new LevelConfiguration(0, ImmutableMap.<String, Level>of());
+
+    private static final Splitter ENTRIES = Splitter.on(',').trimResults().omitEmptyStrings();
+    private static final Splitter.MapSplitter NAMES_TO_LEVELS = ENTRIES.withKeyValueSeparator(Splitter.on('=').trimResults());
+
+    /**
+     * @param specification comma separated logger name=LEVEL pairs; may be empty
+     * @return a configuration holding the levels specified
+     * @throws IllegalArgumentException if the specification is malformed or names an unknown level
+     */
+    static LevelConfiguration parse(final String specification) {
+        final ImmutableMap.Builder<String, Level> levels = ImmutableMap.builder();
+        for (final Map.Entry<String, String> entry: NAMES_TO_LEVELS.split(specification).entrySet()) {
+            levels.put(entry.getKey(), Level.valueOf(entry.getValue()));
+        }
+        return new LevelConfiguration(0, levels.build());
+    }
+
+    private final long version;
+    private final ImmutableMap<String, Level> levels;
+
+    private LevelConfiguration(final long version, final ImmutableMap<String, Level> levels) {
+        this.version = version;
+        this.levels = levels;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    ImmutableMap<String, Level> getLevels() {
+        return levels;
+    }
+
+    LevelConfiguration with(final String loggerName, final Level level) {
+        checkNotNull(loggerName);
+        checkNotNull(level);
+        final ImmutableMap.Builder<String, Level> updated = ImmutableMap.builder();
+        for (final Map.Entry<String, Level> entry: levels.entrySet()) {
+            if (!entry.getKey().equals(loggerName)) {
+                updated.put(entry);
+            }
+        }
+        return new LevelConfiguration(version + 1, updated.put(loggerName, level).build());
+    }
+
+    LevelConfiguration without(final String loggerName) {
+        final ImmutableMap.Builder<String, Level> updated = ImmutableMap.builder();
+        for (final Map.Entry<String, Level> entry: levels.entrySet()) {
+            if (!entry.getKey().equals(loggerName)) {
+                updated.put(entry);
+            }
+        }
+        return new LevelConfiguration(version + 1, updated.build());
+    }
+
+    LevelConfiguration replacedBy(final LevelConfiguration replacement) {
+        return new LevelConfiguration(version + 1, replacement.levels);
+    }
+
+    /**
+     * @return the level configured for the nearest of the logger and its ancestors, if any
+     */
+    Optional<Level> levelFor(final String loggerName) {
+        if (levels.isEmpty()) {
+            return Optional.absent();
+        }
+        String name = loggerName;
+        while (true) {
+            final Level level = levels.get(name);
+            if (level != null) {
+                return Optional.of(level);
+            }
+            final int lastDot = name.lastIndexOf('.');
+            if (lastDot < 0) {
+                return Optional.fromNullable(levels.get(Logger.ROOT_LOGGER_NAME));
+            }
+            name = name.substring(0, lastDot);
+        }
+    }
+
+    /**
+     * @return the levels enabled by the level configured for the nearest of the logger and its ancestors, or every level
+     *         that can be enabled if none is configured
+     */
+    ImmutableSet<Level> enabledLevelsFor(final String loggerName) {
+        final Optional<Level> level = levelFor(loggerName);
+        return level.isPresent() ? enabledBy(level.get()) : Level.enablableValueSet();
+    }
+
+    private static ImmutableSet<Level> enabledBy(final Level level) {
+        switch (level) {
+            case TRACE: return ConventionalLevelHierarchy.TRACE_LEVELS;
+            case DEBUG: return ConventionalLevelHierarchy.DEBUG_LEVELS;
+            case INFO: return ConventionalLevelHierarchy.INFO_LEVELS;
+            case WARN: return ConventionalLevelHierarchy.WARN_LEVELS;
+            case ERROR: return ConventionalLevelHierarchy.ERROR_LEVELS;
+            default:
+                checkArgument(level == Level.OFF, "Unknown level %s", level);
+                return ConventionalLevelHierarchy.OFF_LEVELS;
+        }
+    }
+}
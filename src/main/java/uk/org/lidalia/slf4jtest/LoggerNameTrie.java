@@ -0,0 +1,121 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+
+/**
+ * Index of the names of the loggers of a {@link TestLoggerFactory} by their dot separated segments, so that the loggers at
+ * and below a point in the hierarchy can be found by walking just that subtree.  Removing a name prunes the nodes left with
+ * neither a name nor children, so that the trie only grows with the names present.  Thread safe; additions and removals
+ * are serialised, so that a pruned node is never one being added to, while lookups take no lock.
+ */
+final class LoggerNameTrie {
+
+    private static final Splitter SEGMENTS = Splitter.on('.');
+
+    private final Node root = new Node();
+
+    synchronized void add(final String loggerName) {
+        Node node = root;
+        for (final String segment: SEGMENTS.split(loggerName)) {
+            node = node.child(segment);
+        }
+        node.loggerName = loggerName;
+    }
+
+    synchronized void remove(final String loggerName) {
+        final List<String> segments = Lists.newArrayList(SEGMENTS.split(loggerName));
+        final List<Node> path = new ArrayList<>(segments.size() + 1);
+        path.add(root);
+        for (final String segment: segments) {
+            final Node child = path.get(path.size() - 1).children.get(segment);
+            if (child == null) {
+                return;
+            }
+            path.add(child);
+        }
+        path.get(path.size() - 1).loggerName = null;
+        for (int depth = segments.size(); depth > 0; depth--) {
+            final Node node = path.get(depth);
+            if (node.loggerName != null || !node.children.isEmpty()) {
+                break;
+            }
+            path.get(depth - 1).children.remove(segments.get(depth - 1), node);
+        }
+    }
+
+    /**
+     * @return the given name, if it is present, and every name present that starts with it followed by a dot, in name
+     *         segment order; every name if the name is empty
+     */
+    List<String> namesUnder(final String name) {
+        final List<String> names = new ArrayList<>();
+        final Node node = name.isEmpty() ? root : find(name);
+        if (node != null) {
+            node.collect(names);
+        }
+        return names;
+    }
+
+    private Node find(final String name) {
+        Node node = root;
+        for (final String segment: SEGMENTS.split(name)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    synchronized void clear() {
+        root.children.clear();
+        root.loggerName = null;
+    }
+
+    /**
+     * @return the number of nodes below the root
+     */
+    int nodeCount() {
+        return root.countDescendants();
+    }
+
+    private static final class Node {
+
+        private final ConcurrentMap<String, Node> children = new ConcurrentSkipListMap<>();
+        private volatile String loggerName;
+
+        Node child(final String segment) {
+            final Node existing = children.get(segment);
+            if (existing != null) {
+                return existing;
+            }
+            final Node created = new Node();
+            final Node raced = children.putIfAbsent(segment, created);
+            return raced == null ? created : raced;
+        }
+
+        int countDescendants() {
+            int count = 0;
+            for (final Node child: children.values()) {
+                count += 1 + child.countDescendants();
+            }
+            return count;
+        }
+
+        void collect(final List<String> names) {
+            final String name = loggerName;
+            if (name != null) {
+                names.add(name);
+            }
+            for (final Node child: children.values()) {
+                child.collect(names);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * <p>
+ * The loggers of a {@link TestLoggerFactory}, by name and by position in the logger name hierarchy.
+ * </p>
+ * <p>
+ * By default every logger is held until the registry is cleared.  Once eviction is enabled, a logger is only held strongly
+ * while it has retained events; otherwise it is held weakly, so that a logger no longer referenced elsewhere can be garbage
+ * collected, after which it is removed from the registry and counted as evicted.  Asking for it again creates a new logger.
+ * </p>
+ */
+final class LoggerRegistry {
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LoggerNameTrie names = new LoggerNameTrie();
+    private final ReferenceQueue<TestLogger> collected = new ReferenceQueue<>();
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile boolean evictable = false;
+
+    /**
+     * @return the registered logger with the same name as the candidate, or the candidate, having registered it
+     */
+    TestLogger register(final TestLogger candidate) {
+        expungeCollected();
+        final String name = candidate.getName();
+        while (true) {
+            final Entry existing = entries.get(name);
+            if (existing != null) {
+                final TestLogger logger = existing.get();
+                if (logger != null) {
+                    return logger;
+                }
+                remove(existing);
+            } else if (entries.putIfAbsent(name, new Entry(candidate, collected, !evictable)) == null) {
+                names.add(name);
+                return candidate;
+            }
+        }
+    }
+
+    /**
+     * Holds the logger strongly until it is released, as it has retained events.
+     */
+    void retain(final TestLogger logger) {
+        if (evictable) {
+            final Entry entry = entries.get(logger.getName());
+            if (entry != null && entry.strong == null && entry.get() == logger) {
+                entry.strong = logger;
+            }
+        }
+    }
+
+    /**
+     * Holds the logger only weakly, if eviction is enabled, as it no longer has retained events.
+     */
+    void release(final TestLogger logger) {
+        if (evictable) {
+            final Entry entry = entries.get(logger.getName());
+            if (entry != null && entry.get() == logger) {
+                entry.strong = null;
+            }
+        }
+    }
+
+    synchronized void enableEviction() {
+        if (!evictable) {
+            evictable = true;
+            for (final Entry entry: entries.values()) {
+                final TestLogger logger = entry.get();
+                if (logger != null && logger.getAllLoggingEventsSnapshot().isEmpty()) {
+                    entry.strong = null;
+                }
+            }
+        }
+    }
+
+    boolean isEvictable() {
+        return evictable;
+    }
+
+    /**
+     * @return the loggers currently registered
+     */
+    List<TestLogger> loggers() {
+        expungeCollected();
+        final List<TestLogger> loggers = new ArrayList<>(entries.size());
+        for (final Entry entry: entries.values()) {
+            final TestLogger logger = entry.get();
+            if (logger != null) {
+                loggers.add(logger);
+            }
+        }
+        return loggers;
+    }
+
+    ImmutableMap<String, TestLogger> snapshot() {
+        final ImmutableMap.Builder<String, TestLogger> snapshot = ImmutableMap.builder();
+        for (final TestLogger logger: loggers()) {
+            snapshot.put(logger.getName(), logger);
+        }
+        return snapshot.build();
+    }
+
+    /**
+     * @return the named logger and those below it in the dotted name hierarchy, in name segment order
+     */
+    List<TestLogger> loggersUnder(final String name) {
+        expungeCollected();
+        final List<TestLogger> loggers = new ArrayList<>();
+        for (final String loggerName: names.namesUnder(name)) {
+            final Entry entry = entries.get(loggerName);
+            final TestLogger logger = entry == null ? null : entry.get();
+            if (logger != null) {
+                loggers.add(logger);
+            }
+        }
+        return loggers;
+    }
+
+    int size() {
+        expungeCollected();
+        return entries.size();
+    }
+
+    long getEvictionCount() {
+        return evictions.get();
+    }
+
+    void clear() {
+        entries.clear();
+        names.clear();
+    }
+
+    private void expungeCollected() {
+        Reference<? extends TestLogger> reference;
+        while ((reference = collected.poll()) != null) {
+            remove((Entry) reference);
+        }
+    }
+
+    private void remove(final Entry entry) {
+        if (entries.remove(entry.name, entry)) {
+            evictions.incrementAndGet();
+            names.remove(entry.name);
+            if (entries.containsKey(entry.name)) {
+                // re-registered concurrently, after the removal from the map but possibly before that from the trie
+                names.add(entry.name);
+            }
+        }
+    }
+
+    private static final class Entry extends WeakReference<TestLogger> {
+
+        private final String name;
+        private volatile TestLogger strong;
+
+        Entry(final TestLogger logger, final ReferenceQueue<TestLogger> queue, final boolean strong) {
+            super(logger, queue);
+            this.name = logger.getName();
+            this.strong = strong ? logger : null;
+        }
+    }
+}
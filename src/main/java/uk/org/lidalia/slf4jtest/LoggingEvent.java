@@ -4,11 +4,11 @@ import java.io.PrintStream;
 import java.util.Collections;
 import java.util.Map;
 
+import org.joda.time.DateTimeUtils;
 import org.joda.time.Instant;
 import org.slf4j.Marker;
 import org.slf4j.helpers.MessageFormatter;
 
-import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -20,8 +20,7 @@ import uk.org.lidalia.slf4jext.Level;
 import static com.google.common.base.Optional.absent;
 import static com.google.common.base.Optional.fromNullable;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.collect.FluentIterable.from;
-import static java.util.Arrays.asList;
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * <p>
@@ -318,33 +317,53 @@ public class LoggingEvent extends RichObject {
             final Optional<Throwable> throwable,
             final String message,
             final Object... arguments) {
+        this(creatingLogger, ThreadNames.current(), level, mdc, marker, throwable, message, arguments);
+    }
+
+    LoggingEvent(
+            final Optional<TestLogger> creatingLogger,
+            final String threadName,
+            final Level level,
+            final Map<String, String> mdc,
+            final Optional<Marker> marker,
+            final Optional<Throwable> throwable,
+            final String message,
+            final Object[] arguments) {
         super();
-        this.creatingLogger = creatingLogger;
+        this.creatingLogger = creatingLogger.orNull();
+        this.threadName = checkNotNull(threadName);
         this.level = checkNotNull(level);
         this.mdc = ImmutableMap.copyOf(mdc);
-        this.marker = checkNotNull(marker);
-        this.throwable = checkNotNull(throwable);
+        this.marker = marker.orNull();
+        this.throwable = throwable.orNull();
         this.message = checkNotNull(message);
-        this.arguments = from(asList(arguments)).transform(TO_NON_NULL_VALUE).toList();
+        this.arguments = toNonNullValues(arguments);
     }
 
-    private static final Function<Object, Object> TO_NON_NULL_VALUE = new Function<Object, Object>() {
-        @Override
-        public Object apply(final Object input) {
-            return fromNullable(input).or((Object) absent());
+    private static ImmutableList<Object> toNonNullValues(final Object[] arguments) {
+        final Object[] nonNullValues = new Object[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            nonNullValues[i] = arguments[i] == null ? absent() : arguments[i];
         }
-    };
+        return ImmutableList.copyOf(nonNullValues);
+    }
 
+    /*
+     * Fields are held in their most compact form - absent values as null, the timestamp as a primitive and the thread
+     * name shared by every event its thread logs - and wrapped by the getters, so an event costs little beyond its
+     * payload.  Events created by a logger also share their message template and thread name with the other events of
+     * its factory.  LoggingEventFootprintTests pins the resulting layout.
+     */
     @Identity private final Level level;
     @Identity private final ImmutableMap<String, String> mdc;
-    @Identity private final Optional<Marker> marker;
-    @Identity private final Optional<Throwable> throwable;
+    @Identity private final Marker marker;
+    @Identity private final Throwable throwable;
     @Identity private final String message;
     @Identity private final ImmutableList<Object> arguments;
 
-    private final Optional<TestLogger> creatingLogger;
-    private final Instant timestamp = new Instant();
-    private final String threadName = Thread.currentThread().getName();
+    private final TestLogger creatingLogger;
+    private final long timestamp = DateTimeUtils.currentTimeMillis();
+    private final String threadName;
 
     public Level getLevel() {
         return level;
@@ -355,7 +374,7 @@ public class LoggingEvent extends RichObject {
     }
 
     public Optional<Marker> getMarker() {
-        return marker;
+        return fromNullable(marker);
     }
 
     public String getMessage() {
@@ -367,7 +386,7 @@ public class LoggingEvent extends RichObject {
     }
 
     public Optional<Throwable> getThrowable() {
-        return throwable;
+        return fromNullable(throwable);
     }
 
     /**
@@ -375,13 +394,18 @@ public class LoggingEvent extends RichObject {
      * @throws IllegalStateException if this logging event was not created by a logger
      */
     public TestLogger getCreatingLogger() {
-        return creatingLogger.get();
+        checkState(creatingLogger != null, "%s was not created by a logger", this);
+        return creatingLogger;
     }
 
     /**
      * @return the time at which this logging event was created
      */
     public Instant getTimestamp() {
+        return new Instant(timestamp);
+    }
+
+    long getTimestampMillis() {
         return timestamp;
     }
 
@@ -395,17 +419,9 @@ public class LoggingEvent extends RichObject {
     void print() {
         final PrintStream output = printStreamForLevel();
         output.println(formatLogStatement());
-        throwable.transform(printThrowableTo(output));
-    }
-
-    private static Function<Throwable, String> printThrowableTo(final PrintStream output) {
-        return new Function<Throwable, String>() {
-            @Override
-            public String apply(final Throwable throwableToPrint) {
-                throwableToPrint.printStackTrace(output);
-                return "";
-            }
-        };
+        if (throwable != null) {
+            throwable.printStackTrace(output);
+        }
     }
 
     private String formatLogStatement() {
@@ -413,17 +429,10 @@ public class LoggingEvent extends RichObject {
     }
 
     private String safeLoggerName() {
-        return creatingLogger.transform(toLoggerNameString).or("");
+        return creatingLogger == null ? "" : " " + creatingLogger.getName();
     }
 
-    private static final Function<TestLogger, String> toLoggerNameString = new Function<TestLogger, String>() {
-        @Override
-        public String apply(final TestLogger logger) {
-            return " " + logger.getName();
-        }
-    };
-
-    private String getFormattedMessage() {
+    String getFormattedMessage() {
         return MessageFormatter.arrayFormat(getMessage(), getArguments().toArray()).getMessage();
     }
 
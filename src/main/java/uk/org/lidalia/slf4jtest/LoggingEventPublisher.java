@@ -0,0 +1,249 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>
+ * Publishes each {@link LoggingEvent} logged on a {@link TestLogger}, or on any logger of a {@link TestLoggerFactory}, to
+ * its subscribers as it is logged.  The contract follows that of a Reactive Streams publisher: a subscriber receives
+ * {@link Subscriber#onSubscribe(Subscription)} first, then at most as many {@link Subscriber#onNext(LoggingEvent)} calls as
+ * it has requested, never concurrently.
+ * </p>
+ * <p>
+ * Each subscriber has a bounded buffer holding the events logged but not yet requested.  What happens when it is full is
+ * decided by the {@link OverflowPolicy} chosen on subscribing.  Events are delivered on whichever thread logs them or
+ * requests them, without holding any lock; publishing when there are no subscribers costs a single volatile read.
+ * </p>
+ */
+public final class LoggingEventPublisher {
+
+    public static final int DEFAULT_BUFFER_SIZE = 256;
+
+    private static final BufferedSubscription[] NO_SUBSCRIPTIONS = new BufferedSubscription[0];
+
+    private final Object lock = new Object();
+    private volatile BufferedSubscription[] subscriptions = NO_SUBSCRIPTIONS;
+
+    LoggingEventPublisher() {
+        super();
+    }
+
+    /**
+     * Subscribes with a buffer of {@link #DEFAULT_BUFFER_SIZE} events, failing the subscription if it overflows.
+     *
+     * @param subscriber the subscriber to send events to
+     * @return the new subscription, which is also passed to the subscriber's onSubscribe method
+     */
+    public Subscription subscribe(final Subscriber subscriber) {
+        return subscribe(subscriber, DEFAULT_BUFFER_SIZE, OverflowPolicy.FAIL);
+    }
+
+    /**
+     * @param subscriber the subscriber to send events to
+     * @param bufferSize the maximum number of events to hold for the subscriber before it requests them
+     * @param overflowPolicy what to do with an event logged while the buffer is full
+     * @return the new subscription, which is also passed to the subscriber's onSubscribe method
+     */
+    public Subscription subscribe(final Subscriber subscriber, final int bufferSize, final OverflowPolicy overflowPolicy) {
+        checkArgument(bufferSize > 0, "bufferSize must be positive, was %s", bufferSize);
+        final BufferedSubscription subscription =
+                new BufferedSubscription(checkNotNull(subscriber), bufferSize, checkNotNull(overflowPolicy));
+        synchronized (lock) {
+            final BufferedSubscription[] updated = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+            updated[updated.length - 1] = subscription;
+            subscriptions = updated;
+        }
+        subscriber.onSubscribe(subscription);
+        return subscription;
+    }
+
+    /**
+     * @return the number of subscriptions that have not been cancelled or failed
+     */
+    public int getSubscriberCount() {
+        return subscriptions.length;
+    }
+
+    void publish(final LoggingEvent event) {
+        for (final BufferedSubscription subscription: subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    void cancelAll() {
+        for (final BufferedSubscription subscription: subscriptions) {
+            subscription.cancel();
+        }
+    }
+
+    private void remove(final BufferedSubscription subscription) {
+        synchronized (lock) {
+            final List<BufferedSubscription> remaining = new ArrayList<>(Arrays.asList(subscriptions));
+            remaining.remove(subscription);
+            subscriptions = remaining.isEmpty()
+                    ? NO_SUBSCRIPTIONS : remaining.toArray(new BufferedSubscription[remaining.size()]);
+        }
+    }
+
+    /**
+     * Receives the events published by a {@link LoggingEventPublisher}.
+     */
+    public interface Subscriber {
+
+        void onSubscribe(Subscription subscription);
+
+        void onNext(LoggingEvent event);
+
+        /**
+         * Called at most once, after which no more events are delivered; either because the subscriber's buffer
+         * overflowed under {@link OverflowPolicy#FAIL} or because it requested a non positive number of events.
+         */
+        void onError(Throwable throwable);
+    }
+
+    /**
+     * A subscriber's link to a {@link LoggingEventPublisher}.
+     */
+    public interface Subscription {
+
+        /**
+         * @param count the number of further events the subscriber is ready to receive; Long.MAX_VALUE means unbounded
+         */
+        void request(long count);
+
+        void cancel();
+
+        /**
+         * @return the number of events discarded because the subscriber's buffer was full
+         */
+        long getDroppedCount();
+    }
+
+    public enum OverflowPolicy {
+        /** Discards the oldest buffered event to make room for the new one. */
+        DROP_OLDEST,
+        /** Discards the new event. */
+        DROP_NEWEST,
+        /** Cancels the subscription and signals the subscriber's onError method. */
+        FAIL
+    }
+
+    private final class BufferedSubscription implements Subscription {
+
+        private final Subscriber subscriber;
+        private final int bufferSize;
+        private final OverflowPolicy overflowPolicy;
+        private final Queue<LoggingEvent> buffer = new ArrayDeque<>();
+        private final AtomicInteger pendingDrains = new AtomicInteger();
+        private long demand = 0;
+        private long dropped = 0;
+        private Throwable error;
+        private boolean cancelled = false;
+
+        BufferedSubscription(final Subscriber subscriber, final int bufferSize, final OverflowPolicy overflowPolicy) {
+            this.subscriber = subscriber;
+            this.bufferSize = bufferSize;
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        void offer(final LoggingEvent event) {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                if (buffer.size() == bufferSize) {
+                    if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+                        dropped++;
+                        return;
+                    } else if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                        buffer.remove();
+                        dropped++;
+                    } else if (error == null) {
+                        error = new IllegalStateException("Subscriber buffer of " + bufferSize + " events overflowed");
+                    }
+                }
+                buffer.add(event);
+            }
+            drain();
+        }
+
+        @Override
+        public void request(final long count) {
+            synchronized (this) {
+                if (count <= 0) {
+                    error = new IllegalArgumentException("Must request a positive number of events, requested " + count);
+                } else {
+                    demand = demand + count < 0 ? Long.MAX_VALUE : demand + count;
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                buffer.clear();
+            }
+            remove(this);
+        }
+
+        @Override
+        public synchronized long getDroppedCount() {
+            return dropped;
+        }
+
+        /**
+         * Delivers as many buffered events as have been requested.  Only one thread drains at a time; any other thread
+         * wanting to drain meanwhile leaves it to that one, which then loops round again, so calls to the subscriber are
+         * never concurrent and are made without holding any lock.
+         */
+        private void drain() {
+            if (pendingDrains.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                while (true) {
+                    final LoggingEvent next;
+                    final Throwable failure;
+                    synchronized (this) {
+                        if (cancelled) {
+                            return;
+                        }
+                        failure = error;
+                        if (failure != null) {
+                            cancelled = true;
+                            buffer.clear();
+                            next = null;
+                        } else if (demand > 0 && !buffer.isEmpty()) {
+                            next = buffer.remove();
+                            if (demand != Long.MAX_VALUE) {
+                                demand--;
+                            }
+                        } else {
+                            next = null;
+                        }
+                    }
+                    if (failure != null) {
+                        remove(this);
+                        subscriber.onError(failure);
+                        return;
+                    } else if (next == null) {
+                        break;
+                    }
+                    subscriber.onNext(next);
+                }
+                missed = pendingDrains.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
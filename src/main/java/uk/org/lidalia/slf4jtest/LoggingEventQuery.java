@@ -0,0 +1,277 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.ReadableInstant;
+import org.slf4j.Marker;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.FluentIterable;
+
+import uk.org.lidalia.slf4jext.Level;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Arrays.asList;
+
+/**
+ * <p>
+ * A query over all the {@link LoggingEvent}s logged on the loggers of a {@link TestLoggerFactory}, by ANY thread, combining
+ * any number of criteria.  Obtain one via {@link TestLoggerFactory#query()}, add criteria, then call {@link #execute()}.
+ * </p>
+ * <p>
+ * On execution each criterion that the factory's storage can answer directly - the level partitions, the timestamp column
+ * and any enabled marker, MDC or thread name index - offers its matching events as a candidate source, alongside a scan of
+ * every event.  The smallest source is chosen and the remaining criteria are applied to it lazily as the result is iterated,
+ * so no events are copied.  {@link #explain()} describes the plan that would be chosen.
+ * </p>
+ */
+public final class LoggingEventQuery {
+
+    private final LoggingEventStore store;
+    private final Map<String, Criterion> criteria = new LinkedHashMap<>();
+
+    LoggingEventQuery(final LoggingEventStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Restricts the query to events logged on the named logger or on any logger below it in the dotted name hierarchy.
+     *
+     * @param loggerName the name of the logger at the root of the hierarchy to match
+     * @return this query
+     */
+    public LoggingEventQuery loggerNamePrefix(final String loggerName) {
+        checkNotNull(loggerName);
+        return add(new Criterion("loggerNamePrefix=" + loggerName, new Predicate<LoggingEvent>() {
+            @Override
+            public boolean apply(final LoggingEvent event) {
+                return isSameOrDescendant(event.getCreatingLogger().getName(), loggerName);
+            }
+        }));
+    }
+
+    /**
+     * @param levels the levels events must be at; events at any of them match
+     * @return this query
+     */
+    public LoggingEventQuery levels(final Level... levels) {
+        checkArgument(levels.length > 0, "At least one level is required");
+        final Set<Level> levelSet = EnumSet.copyOf(asList(levels));
+        return add(new IndexedCriterion("levels=" + levelSet, new Predicate<LoggingEvent>() {
+            @Override
+            public boolean apply(final LoggingEvent event) {
+                return levelSet.contains(event.getLevel());
+            }
+        }) {
+            @Override
+            int estimateCandidates() {
+                int count = 0;
+                for (final Level level: levelSet) {
+                    count += store.count(level);
+                }
+                return count;
+            }
+
+            @Override
+            List<LoggingEvent> candidates() {
+                return store.getLoggingEvents(levelSet);
+            }
+        });
+    }
+
+    /**
+     * @param marker the marker events must have or whose marker must reference
+     * @return this query
+     */
+    public LoggingEventQuery marker(final Marker marker) {
+        return add(indexed("marker=" + marker.getName(), SecondaryIndex.MARKER, marker.getName()));
+    }
+
+    /**
+     * @param key an MDC key
+     * @param value the value the MDC key must have
+     * @return this query
+     */
+    public LoggingEventQuery mdc(final String key, final String value) {
+        return add(indexed("mdc." + key + "=" + value, SecondaryIndex.mdc(key), checkNotNull(value)));
+    }
+
+    /**
+     * @param threadName the name of the thread that must have logged events
+     * @return this query
+     */
+    public LoggingEventQuery thread(final String threadName) {
+        return add(indexed("threadName=" + threadName, SecondaryIndex.THREAD_NAME, checkNotNull(threadName)));
+    }
+
+    /**
+     * @param from the start of the window of time events must have been created in, inclusive
+     * @param to the end of the window of time events must have been created in, exclusive
+     * @return this query
+     */
+    public LoggingEventQuery between(final ReadableInstant from, final ReadableInstant to) {
+        final long fromMillis = from.getMillis();
+        final long toMillis = to.getMillis();
+        return add(new IndexedCriterion("between=[" + from + ", " + to + ")", new Predicate<LoggingEvent>() {
+            @Override
+            public boolean apply(final LoggingEvent event) {
+                final long millis = event.getTimestampMillis();
+                return millis >= fromMillis && millis < toMillis;
+            }
+        }) {
+            @Override
+            List<LoggingEvent> candidates() {
+                return store.getLoggingEventsBetween(fromMillis, toMillis);
+            }
+        });
+    }
+
+    /**
+     * @return a lazy view of the matching events, in the order they were logged; iterating it more than once gives the same
+     *         events, as it reads from a snapshot taken when this method was called
+     */
+    public FluentIterable<LoggingEvent> execute() {
+        final Plan plan = plan();
+        return FluentIterable.from(plan.candidates).filter(plan.residual());
+    }
+
+    /**
+     * @return a description of the candidate source the query would currently read from and the criteria it would filter on
+     */
+    public String explain() {
+        return plan().toString();
+    }
+
+    private Plan plan() {
+        IndexedCriterion chosen = null;
+        int smallest = store.size();
+        for (final Criterion criterion: criteria.values()) {
+            if (criterion instanceof IndexedCriterion) {
+                final IndexedCriterion indexed = (IndexedCriterion) criterion;
+                if (indexed.isAvailable()) {
+                    final int candidates = indexed.estimateCandidates();
+                    if (candidates < smallest) {
+                        smallest = candidates;
+                        chosen = indexed;
+                    }
+                }
+            }
+        }
+        return chosen == null ? new Plan(null, store.getLoggingEvents()) : new Plan(chosen, chosen.candidates());
+    }
+
+    private LoggingEventQuery add(final Criterion criterion) {
+        criteria.put(criterion.description, criterion);
+        return this;
+    }
+
+    private Criterion indexed(final String description, final SecondaryIndex index, final String key) {
+        return new IndexedCriterion(description, new Predicate<LoggingEvent>() {
+            @Override
+            public boolean apply(final LoggingEvent event) {
+                return index.keysOf(event).contains(key);
+            }
+        }) {
+            @Override
+            boolean isAvailable() {
+                return store.hasIndex(index);
+            }
+
+            @Override
+            List<LoggingEvent> candidates() {
+                return store.getLoggingEvents(index, key);
+            }
+        };
+    }
+
+    static boolean isSameOrDescendant(final String loggerName, final String ancestorName) {
+        return loggerName.startsWith(ancestorName)
+                && (loggerName.length() == ancestorName.length()
+                        || ancestorName.isEmpty()
+                        || loggerName.charAt(ancestorName.length()) == '.');
+    }
+
+    /**
+     * A criterion that can only be checked against each event of some candidate source.
+     */
+    private static class Criterion {
+
+        private final String description;
+        private final Predicate<LoggingEvent> predicate;
+
+        Criterion(final String description, final Predicate<LoggingEvent> predicate) {
+            this.description = description;
+            this.predicate = predicate;
+        }
+    }
+
+    /**
+     * A criterion whose matching events the store can also offer directly, as a candidate source.
+     */
+    private abstract static class IndexedCriterion extends Criterion {
+
+        IndexedCriterion(final String description, final Predicate<LoggingEvent> predicate) {
+            super(description, predicate);
+        }
+
+        /**
+         * @return whether the store can currently offer this criterion's events without scanning
+         */
+        boolean isAvailable() {
+            return true;
+        }
+
+        /**
+         * @return the number of events {@link #candidates()} would currently return
+         */
+        int estimateCandidates() {
+            return candidates().size();
+        }
+
+        /**
+         * @return a view of the events the store currently holds matching this criterion
+         */
+        abstract List<LoggingEvent> candidates();
+    }
+
+    private class Plan {
+
+        private final Criterion source;
+        private final List<LoggingEvent> candidates;
+
+        Plan(final Criterion chosen, final List<LoggingEvent> candidates) {
+            this.source = chosen == null ? new Criterion("scan", Predicates.<LoggingEvent>alwaysTrue()) : chosen;
+            this.candidates = candidates;
+        }
+
+        Predicate<LoggingEvent> residual() {
+            final List<Predicate<LoggingEvent>> residual = new ArrayList<>();
+            for (final Criterion criterion: criteria.values()) {
+                if (criterion != source) {
+                    residual.add(criterion.predicate);
+                }
+            }
+            return Predicates.and(residual);
+        }
+
+        @Override
+        public String toString() {
+            final List<String> filters = new ArrayList<>();
+            for (final Criterion criterion: criteria.values()) {
+                if (criterion != source) {
+                    filters.add(criterion.description);
+                }
+            }
+            return source.description + " (" + candidates.size() + " candidates)"
+                    + (filters.isEmpty() ? "" : " filtered by " + Joiner.on(", ").join(filters));
+        }
+    }
+}
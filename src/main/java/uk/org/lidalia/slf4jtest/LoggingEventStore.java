@@ -0,0 +1,626 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.DateTimeUtils;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+
+import uk.org.lidalia.slf4jext.Level;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Predicates.in;
+import static com.google.common.base.Predicates.not;
+import static com.google.common.collect.FluentIterable.from;
+
+/**
+ * <p>
+ * Append only, thread safe store of {@link LoggingEvent}s backing both {@link TestLogger} and {@link TestLoggerFactory}.
+ * </p>
+ * <p>
+ * Events are held in a single array in the order in which they were added, the global sequence, and are additionally
+ * partitioned by {@link Level} ordinal as lists of positions into that array.  This makes counting the events at a level
+ * O(1), and allows both the whole sequence and any one level to be returned as a {@link LoggingEventsView} without
+ * copying.  Clearing the store swaps in a new, empty segment rather than mutating the existing one, so views taken
+ * beforehand are unaffected, and increments the store's generation.  A {@link Checkpoint} records the generation and the
+ * number of events added in it so far, so reading the events added since it was taken is again a view.
+ * </p>
+ * <p>
+ * Each event's timestamp is also held in a primitive column kept in ascending order, so that the events in a window of
+ * time can be found by binary search.  Events from different threads may be added slightly out of timestamp order; the
+ * column holds the highest timestamp seen so far and the store tracks the largest such disorder, widening searches by
+ * that much and filtering the result exactly when it is not zero.
+ * </p>
+ * <p>
+ * {@link SecondaryIndex}es may optionally be enabled, in which case they are kept up to date as events are added and
+ * lookups against them return views over the positions they hold rather than scanning every event.
+ * </p>
+ * <p>
+ * The store also keeps a running estimate of the heap its events retain, recording each event's share so that the oldest
+ * events can be evicted to bring it down to a target.
+ * </p>
+ * <p>
+ * A {@link TimeToLive} may be set, after which events timestamped longer ago than it are dropped.  As the timestamp column
+ * is ascending the expired events are always a prefix of the segment, so each add and read first advances the segment's
+ * start past any newly expired events, touching each event once.  The expired prefix stays in the segment's arrays, so that
+ * views taken beforehand are unaffected, until it is at least as long as the live events, when the live events are copied
+ * into a new segment; each event is therefore copied at most once on average, and no per-event timers are needed.
+ * </p>
+ * <p>
+ * Events may also be removed by evicting the oldest of them, by level or by identity; these copy the remaining events into
+ * a new segment at once, so that the removed events are no longer reachable from the store.  Each event keeps the sequence
+ * number it was given when added, counted from the start of the generation, across compactions and removals alike, and
+ * checkpoints record the next sequence number, so only clearing the store starts a new generation.
+ * </p>
+ * <p>
+ * {@link Listener}s may be registered to be told, while the store's lock is held, of each event added, of each event
+ * removed or expired and of each clear.  Adding an event costs nothing extra when there are none.
+ * </p>
+ */
+final class LoggingEventStore {
+
+    private static final Listener[] NO_LISTENERS = new Listener[0];
+
+    private final Set<SecondaryIndex> indexes = new LinkedHashSet<>();
+    private final TimeToLive timeToLive;
+    private Segment segment = new Segment(indexes);
+    private long generation = 0;
+    private Listener[] listeners = NO_LISTENERS;
+
+    LoggingEventStore() {
+        this(new TimeToLive());
+    }
+
+    LoggingEventStore(final TimeToLive timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    synchronized void add(final LoggingEvent event) {
+        expire();
+        segment.add(event);
+        for (final Listener listener: listeners) {
+            listener.added(event);
+        }
+    }
+
+    synchronized void clear() {
+        segment = new Segment(indexes);
+        generation++;
+        for (final Listener listener: listeners) {
+            listener.cleared();
+        }
+    }
+
+    /**
+     * Atomically removes every event stored and returns them, as {@link #clear()} does, so that no event added
+     * concurrently is either lost or returned twice.
+     *
+     * @return a view of the detached segment's events
+     */
+    synchronized List<LoggingEvent> drain() {
+        expire();
+        final List<LoggingEvent> drained = segment.view();
+        clear();
+        return drained;
+    }
+
+    /**
+     * Registers the listener, first passing it every event already stored so that it sees each event exactly once.
+     */
+    synchronized void addListener(final Listener listener) {
+        expire();
+        for (int position = segment.start; position < segment.size; position++) {
+            listener.added(segment.events[position]);
+        }
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
+
+    synchronized void removeListener(final Listener listener) {
+        final List<Listener> remaining = new ArrayList<>(Arrays.asList(listeners));
+        remaining.remove(listener);
+        listeners = remaining.isEmpty() ? NO_LISTENERS : remaining.toArray(new Listener[remaining.size()]);
+    }
+
+    /**
+     * Enables the given index, building it from the events already stored.  Enabling an index twice has no effect.
+     */
+    synchronized void addIndex(final SecondaryIndex index) {
+        if (indexes.add(index)) {
+            segment.addIndex(index);
+        }
+    }
+
+    synchronized boolean hasIndex(final SecondaryIndex index) {
+        return indexes.contains(index);
+    }
+
+    /**
+     * @return the events which the given index maps to the given key; uses the index if it is enabled, otherwise scans
+     */
+    synchronized List<LoggingEvent> getLoggingEvents(final SecondaryIndex index, final String key) {
+        expire();
+        return segment.view(index, key);
+    }
+
+    /**
+     * Narrows the events down to those the given index maps to every one of the required keys, if the index is enabled,
+     * and then checks each remaining event against the predicate outside the store's lock.  The predicate must only
+     * match events which the index maps to all the required keys.
+     *
+     * @return the events satisfying the predicate, in the order they were added
+     */
+    ImmutableList<LoggingEvent> getLoggingEvents(
+            final SecondaryIndex index, final Set<String> requiredKeys, final Predicate<LoggingEvent> predicate) {
+        final List<LoggingEvent> candidates;
+        synchronized (this) {
+            expire();
+            candidates = segment.candidates(index, requiredKeys);
+        }
+        return from(candidates).filter(predicate).toList();
+    }
+
+    /**
+     * @return statistics about the given index over the events currently stored, if it is enabled
+     */
+    synchronized Optional<IndexStatistics> getStatistics(final SecondaryIndex index) {
+        final IndexData data = segment.indexed.get(index);
+        return data == null ? Optional.<IndexStatistics>absent() : Optional.of(data.statistics());
+    }
+
+    synchronized List<LoggingEvent> getLoggingEvents() {
+        expire();
+        return segment.view();
+    }
+
+    synchronized List<LoggingEvent> getLoggingEvents(final Level level) {
+        expire();
+        return segment.view(level);
+    }
+
+    /**
+     * @return the events at any of the given levels, in the order added, merged from the level partitions
+     */
+    synchronized List<LoggingEvent> getLoggingEvents(final Set<Level> levels) {
+        expire();
+        return segment.view(levels);
+    }
+
+    /**
+     * @return the events with timestamps from the first instant inclusive to the second exclusive, in the order added
+     */
+    synchronized List<LoggingEvent> getLoggingEventsBetween(final long fromMillis, final long toMillis) {
+        expire();
+        return segment.between(fromMillis, toMillis);
+    }
+
+    synchronized Checkpoint checkpoint() {
+        expire();
+        return new Checkpoint(this, generation, segment.nextSequence);
+    }
+
+    /**
+     * @return the events added since the checkpoint was taken; all the events if the store has been cleared since
+     */
+    synchronized List<LoggingEvent> getLoggingEventsSince(final Checkpoint checkpoint) {
+        checkOwned(checkpoint);
+        expire();
+        return checkpoint.getGeneration() == generation
+                ? segment.view(segment.positionOf(checkpoint.getPosition()), segment.size)
+                : segment.view();
+    }
+
+    /**
+     * @return the events still stored that were added after the first checkpoint was taken and before the second, or, if
+     *         the store was cleared in between, since it was last cleared before the second checkpoint was taken; none if
+     *         it has been cleared since the second checkpoint was taken
+     */
+    synchronized List<LoggingEvent> getLoggingEventsBetween(final Checkpoint from, final Checkpoint to) {
+        checkOwned(from);
+        checkOwned(to);
+        checkArgument(!from.isAfter(to), "%s was taken after %s", from, to);
+        expire();
+        if (to.getGeneration() != generation) {
+            return ImmutableList.of();
+        }
+        final int start = from.getGeneration() == generation ? segment.positionOf(from.getPosition()) : 0;
+        return segment.view(start, segment.positionOf(to.getPosition()));
+    }
+
+    private void checkOwned(final Checkpoint checkpoint) {
+        checkArgument(checkpoint.getStore() == this, "%s was not taken from this logger", checkpoint);
+    }
+
+    /**
+     * @return the estimated heap retained by the events stored and the store's structures for them
+     */
+    synchronized long getEstimatedBytes() {
+        expire();
+        return segment.estimatedBytes;
+    }
+
+    /**
+     * Removes the oldest events, as few as will bring the estimated bytes retained down to the target.  The remaining
+     * events keep their sequence numbers, so checkpoints taken beforehand still find the events added after them, and
+     * listeners are told of the events removed.
+     *
+     * @return the events removed, in the order they were added
+     */
+    synchronized List<LoggingEvent> evictOldestDownTo(final long targetBytes) {
+        expire();
+        int count = 0;
+        long remainingBytes = segment.estimatedBytes;
+        while (segment.start + count < segment.size && remainingBytes > targetBytes) {
+            remainingBytes -= segment.estimatedBytes(segment.start + count++);
+        }
+        return evictOldest(count);
+    }
+
+    /**
+     * As {@link #evictOldestDownTo(long)}, removing the given number of events.
+     */
+    synchronized List<LoggingEvent> evictOldest(final int count) {
+        expire();
+        final Segment evicted = segment;
+        final int removed = Math.min(count, evicted.size - evicted.start);
+        if (removed == 0) {
+            return ImmutableList.of();
+        }
+        segment = evicted.compact(indexes, evicted.start + removed, Predicates.<LoggingEvent>alwaysTrue());
+        return notifyRemoved(evicted.view(evicted.start, evicted.start + removed));
+    }
+
+    /**
+     * Removes every event at any of the given levels, as {@link #evictOldest(int)} does.
+     *
+     * @return the events removed, in the order they were added
+     */
+    synchronized List<LoggingEvent> removeLevels(final Set<Level> levels) {
+        expire();
+        return remove(segment.view(levels));
+    }
+
+    /**
+     * Removes each of the given events that is stored, as {@link #evictOldest(int)} does.
+     *
+     * @param events the events to remove, which should be an identity set, as equal events may be logged more than once
+     * @return the events removed, in the order they were added
+     */
+    synchronized List<LoggingEvent> removeAll(final Set<LoggingEvent> events) {
+        expire();
+        final List<LoggingEvent> removed = new ArrayList<>();
+        for (final LoggingEvent event: segment.view()) {
+            if (events.contains(event)) {
+                removed.add(event);
+            }
+        }
+        return remove(removed);
+    }
+
+    private List<LoggingEvent> remove(final List<LoggingEvent> removed) {
+        if (!removed.isEmpty()) {
+            final Set<LoggingEvent> identities = Sets.newIdentityHashSet();
+            identities.addAll(removed);
+            segment = segment.compact(indexes, segment.start, not(in(identities)));
+            notifyRemoved(removed);
+        }
+        return removed;
+    }
+
+    private List<LoggingEvent> notifyRemoved(final List<LoggingEvent> removed) {
+        for (final Listener listener: listeners) {
+            listener.removed(removed);
+        }
+        return removed;
+    }
+
+    synchronized int size() {
+        expire();
+        return segment.size - segment.start;
+    }
+
+    synchronized int count(final Level level) {
+        expire();
+        final PositionList partition = segment.byLevel[level.ordinal()];
+        return partition == null ? 0 : partition.size() - partition.firstIndexAtOrAfter(segment.start);
+    }
+
+    private void expire() {
+        final long millis = timeToLive.getMillis();
+        if (millis == TimeToLive.FOREVER) {
+            return;
+        }
+        final Segment expiring = segment;
+        final int start = expiring.start;
+        final boolean compact = expiring.expireBefore(DateTimeUtils.currentTimeMillis() - millis);
+        if (expiring.start > start && listeners.length > 0) {
+            notifyRemoved(LoggingEventsView.of(expiring.events, start, expiring.start));
+        }
+        if (compact) {
+            segment = expiring.compact(indexes, expiring.start, Predicates.<LoggingEvent>alwaysTrue());
+        }
+    }
+
+    static final class Segment {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        /** The event's slots in the events, timestamps and sizes arrays, its sequence number and its level partition. */
+        private static final int PER_EVENT_OVERHEAD = HeapEstimates.REFERENCE + 8 + 4 + 4 + 4;
+
+        private LoggingEvent[] events = new LoggingEvent[INITIAL_CAPACITY];
+        private long[] timestamps = new long[INITIAL_CAPACITY];
+        private int[] sizes = new int[INITIAL_CAPACITY];
+        private long estimatedBytes = 0;
+        private long maxDisorderMillis = 0;
+        private int size = 0;
+        /** The position of the first event that has not expired; those before it are hidden from every view. */
+        private int start = 0;
+        /** Each event's sequence number within its generation, ascending, so that positions can be found by sequence. */
+        private final PositionList sequences = new PositionList();
+        private int nextSequence = 0;
+        private final PositionList[] byLevel = new PositionList[Level.values().length];
+        private final Map<SecondaryIndex, IndexData> indexed = new LinkedHashMap<>();
+
+        Segment(final Set<SecondaryIndex> indexes) {
+            for (final SecondaryIndex index: indexes) {
+                indexed.put(index, new IndexData(index));
+            }
+        }
+
+        void add(final LoggingEvent event) {
+            add(event, nextSequence);
+        }
+
+        private void add(final LoggingEvent event, final int sequence) {
+            if (size == events.length) {
+                events = Arrays.copyOf(events, size * 2);
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                sizes = Arrays.copyOf(sizes, size * 2);
+            }
+            final int position = size++;
+            events[position] = event;
+            sequences.add(sequence);
+            nextSequence = sequence + 1;
+            sizes[position] = (int) Math.min(Integer.MAX_VALUE, HeapEstimates.loggingEvent(event) + PER_EVENT_OVERHEAD);
+            estimatedBytes += sizes[position];
+            addTimestamp(position, event.getTimestampMillis());
+            final int ordinal = event.getLevel().ordinal();
+            if (byLevel[ordinal] == null) {
+                byLevel[ordinal] = new PositionList();
+            }
+            byLevel[ordinal].add(position);
+            for (final IndexData index: indexed.values()) {
+                index.add(event, position);
+            }
+        }
+
+        long estimatedBytes(final int position) {
+            return sizes[position];
+        }
+
+        /**
+         * @return the position of the first event with at least the given sequence number, or the size if there is none
+         */
+        int positionOf(final int sequence) {
+            return sequences.firstIndexAtOrAfter(sequence);
+        }
+
+        /**
+         * @return a new segment holding the events from the given position on that the predicate keeps, with their
+         *         sequence numbers, and continuing this segment's sequence
+         */
+        Segment compact(final Set<SecondaryIndex> indexes, final int from, final Predicate<LoggingEvent> keep) {
+            final Segment compacted = new Segment(indexes);
+            for (int position = from; position < size; position++) {
+                if (keep.apply(events[position])) {
+                    compacted.add(events[position], sequences.get(position));
+                }
+            }
+            compacted.nextSequence = nextSequence;
+            return compacted;
+        }
+
+        /**
+         * Advances the start past the events timestamped before the cutoff.
+         *
+         * @return true if the expired events now at least equal the live events in number, so should be compacted away
+         */
+        boolean expireBefore(final long cutoffMillis) {
+            while (start < size && timestamps[start] < cutoffMillis) {
+                estimatedBytes -= sizes[start++];
+            }
+            return start > 0 && start >= size - start;
+        }
+
+        private void addTimestamp(final int position, final long millis) {
+            final long latest = position == 0 ? millis : timestamps[position - 1];
+            if (millis < latest) {
+                maxDisorderMillis = Math.max(maxDisorderMillis, latest - millis);
+                timestamps[position] = latest;
+            } else {
+                timestamps[position] = millis;
+            }
+        }
+
+        void addIndex(final SecondaryIndex index) {
+            final IndexData data = new IndexData(index);
+            for (int position = start; position < size; position++) {
+                data.add(events[position], position);
+            }
+            indexed.put(index, data);
+        }
+
+        LoggingEventsView view() {
+            return LoggingEventsView.of(events, start, size);
+        }
+
+        LoggingEventsView view(final int from, final int to) {
+            final int liveFrom = Math.max(from, start);
+            return LoggingEventsView.of(events, liveFrom, Math.max(liveFrom, to));
+        }
+
+        LoggingEventsView view(final Level level) {
+            return viewOf(byLevel[level.ordinal()]);
+        }
+
+        LoggingEventsView view(final Set<Level> levels) {
+            PositionList merged = null;
+            for (final Level level: levels) {
+                final PositionList partition = byLevel[level.ordinal()];
+                if (partition != null) {
+                    merged = merged == null ? partition : merged.merge(partition);
+                }
+            }
+            return viewOf(merged);
+        }
+
+        LoggingEventsView view(final SecondaryIndex index, final String key) {
+            final IndexData data = indexed.get(index);
+            final PositionList positions;
+            if (data == null) {
+                positions = new PositionList();
+                for (int position = start; position < size; position++) {
+                    if (index.keysOf(events[position]).contains(key)) {
+                        positions.add(position);
+                    }
+                }
+            } else {
+                positions = data.keyToPositions.get(key);
+            }
+            return viewOf(positions);
+        }
+
+        LoggingEventsView between(final long fromMillis, final long toMillis) {
+            final int from = Math.max(start, firstAtOrAfter(fromMillis));
+            final int end = firstAtOrAfter(toMillis + maxDisorderMillis);
+            if (maxDisorderMillis == 0 || from >= end) {
+                return LoggingEventsView.of(events, from, Math.max(from, end));
+            }
+            final PositionList positions = new PositionList();
+            for (int position = from; position < end; position++) {
+                final long millis = events[position].getTimestampMillis();
+                if (millis >= fromMillis && millis < toMillis) {
+                    positions.add(position);
+                }
+            }
+            return viewOf(positions);
+        }
+
+        private int firstAtOrAfter(final long millis) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (timestamps[mid] < millis) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        LoggingEventsView candidates(final SecondaryIndex index, final Set<String> requiredKeys) {
+            final IndexData data = indexed.get(index);
+            if (data == null || requiredKeys.isEmpty()) {
+                return view();
+            }
+            final List<PositionList> postings = new ArrayList<>(requiredKeys.size());
+            for (final String key: requiredKeys) {
+                final PositionList positions = data.keyToPositions.get(key);
+                if (positions == null) {
+                    return viewOf(null);
+                }
+                postings.add(positions);
+            }
+            Collections.sort(postings, SMALLEST_FIRST);
+            PositionList intersection = postings.get(0);
+            for (final PositionList positions: postings.subList(1, postings.size())) {
+                intersection = intersection.retainAll(positions);
+            }
+            return viewOf(intersection);
+        }
+
+        private LoggingEventsView viewOf(final PositionList positions) {
+            if (positions == null) {
+                return LoggingEventsView.of(events, 0, 0);
+            }
+            return LoggingEventsView.of(events, positions.array(), positions.firstIndexAtOrAfter(start), positions.size());
+        }
+    }
+
+    /**
+     * Notified of changes to a {@link LoggingEventStore} while its lock is held, so must be quick and must not call back
+     * into the store.
+     */
+    interface Listener {
+
+        void added(LoggingEvent event);
+
+        void cleared();
+
+        /**
+         * @param events the events evicted, removed or expired from the store, in the order they were added
+         */
+        void removed(List<LoggingEvent> events);
+    }
+
+    private static final Comparator<PositionList> SMALLEST_FIRST = new Comparator<PositionList>() {
+        @Override
+        public int compare(final PositionList first, final PositionList second) {
+            return Integer.compare(first.size(), second.size());
+        }
+    };
+
+    private static final class IndexData {
+
+        private final SecondaryIndex index;
+        private final Map<String, PositionList> keyToPositions = new HashMap<>();
+        private long postings = 0;
+        private long buildTimeNanos = 0;
+
+        IndexData(final SecondaryIndex index) {
+            this.index = index;
+        }
+
+        void add(final LoggingEvent event, final int position) {
+            final long start = System.nanoTime();
+            for (final String key: index.keysOf(event)) {
+                PositionList positions = keyToPositions.get(key);
+                if (positions == null) {
+                    positions = new PositionList();
+                    keyToPositions.put(key, positions);
+                }
+                positions.add(position);
+                postings++;
+            }
+            buildTimeNanos += System.nanoTime() - start;
+        }
+
+        IndexStatistics statistics() {
+            return new IndexStatistics(keyToPositions.size(), postings, estimateBytes(keyToPositions), buildTimeNanos);
+        }
+
+        private static long estimateBytes(final Map<String, PositionList> keyToPositions) {
+            long bytes = HeapEstimates.hashMap(keyToPositions.size());
+            for (final Map.Entry<String, PositionList> entry: keyToPositions.entrySet()) {
+                bytes += HeapEstimates.string(entry.getKey()) + entry.getValue().estimateBytes();
+            }
+            return bytes;
+        }
+    }
+}
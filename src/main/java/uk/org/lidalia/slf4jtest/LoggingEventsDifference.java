@@ -0,0 +1,105 @@
+package uk.org.lidalia.slf4jtest;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multiset;
+
+import uk.org.lidalia.lang.Identity;
+import uk.org.lidalia.lang.RichObject;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>
+ * The result of comparing an expected collection of {@link LoggingEvent}s against those actually logged, ignoring order.
+ * </p>
+ * <p>
+ * Events are compared using {@link LoggingEvent#equals(Object)}, and duplicates are significant - an event expected twice
+ * but logged once is reported as missing once.  The comparison builds a hash multiset of the expected events once and then
+ * makes a single pass over the actual events, so costs O(n + m) rather than the O(n * m) of repeated list searches.
+ * </p>
+ */
+public final class LoggingEventsDifference extends RichObject {
+
+    /**
+     * @param expected the events that were expected to be logged
+     * @param actual the events that were actually logged
+     * @return the difference between them, ignoring order
+     */
+    public static LoggingEventsDifference between(
+            final Iterable<LoggingEvent> expected, final Iterable<LoggingEvent> actual) {
+        final Multiset<LoggingEvent> missing = HashMultiset.create(checkNotNull(expected));
+        final Multiset<LoggingEvent> unexpected = HashMultiset.create();
+        for (final LoggingEvent event: actual) {
+            if (!missing.remove(event)) {
+                unexpected.add(event);
+            }
+        }
+        return new LoggingEventsDifference(missing, unexpected);
+    }
+
+    static boolean containsExactlyInAnyOrder(final Iterable<LoggingEvent> actual, final Iterable<LoggingEvent> expected) {
+        final Multiset<LoggingEvent> remaining = HashMultiset.create(checkNotNull(expected));
+        for (final LoggingEvent event: actual) {
+            if (!remaining.remove(event)) {
+                return false;
+            }
+        }
+        return remaining.isEmpty();
+    }
+
+    static boolean containsAll(final Iterable<LoggingEvent> actual, final Iterable<LoggingEvent> expected) {
+        final Multiset<LoggingEvent> remaining = HashMultiset.create(checkNotNull(expected));
+        for (final LoggingEvent event: actual) {
+            if (remaining.isEmpty()) {
+                break;
+            }
+            remaining.remove(event);
+        }
+        return remaining.isEmpty();
+    }
+
+    static boolean containsNone(final Iterable<LoggingEvent> actual, final Iterable<LoggingEvent> unexpected) {
+        final ImmutableSet<LoggingEvent> forbidden = ImmutableSet.copyOf(checkNotNull(unexpected));
+        if (forbidden.isEmpty()) {
+            return true;
+        }
+        for (final LoggingEvent event: actual) {
+            if (forbidden.contains(event)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Identity private final ImmutableMultiset<LoggingEvent> missing;
+    @Identity private final ImmutableMultiset<LoggingEvent> unexpected;
+
+    private LoggingEventsDifference(final Multiset<LoggingEvent> missing, final Multiset<LoggingEvent> unexpected) {
+        super();
+        this.missing = ImmutableMultiset.copyOf(missing);
+        this.unexpected = ImmutableMultiset.copyOf(unexpected);
+    }
+
+    /**
+     * @return the events that were expected but not logged, with the number of times each is missing
+     */
+    public ImmutableMultiset<LoggingEvent> getMissing() {
+        return missing;
+    }
+
+    /**
+     * @return the events that were logged but not expected, with the number of times each was unexpected
+     */
+    public ImmutableMultiset<LoggingEvent> getUnexpected() {
+        return unexpected;
+    }
+
+    /**
+     * @return true if exactly the expected events were logged, in any order
+     */
+    public boolean isEmpty() {
+        return missing.isEmpty() && unexpected.isEmpty();
+    }
+}
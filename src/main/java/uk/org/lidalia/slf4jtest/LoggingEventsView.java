@@ -0,0 +1,54 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+/**
+ * Unmodifiable view of a range of the events in a {@link LoggingEventStore}, optionally selected through a
+ * {@link PositionList}.  Holds on to the arrays the store had at the point the view was taken; as those arrays are only
+ * ever appended to, the view is a stable snapshot that does not need to copy any events.
+ */
+final class LoggingEventsView extends AbstractList<LoggingEvent> implements RandomAccess {
+
+    static LoggingEventsView of(final LoggingEvent[] events, final int from, final int to) {
+        return new LoggingEventsView(events, null, from, to);
+    }
+
+    static LoggingEventsView of(final LoggingEvent[] events, final int[] positions, final int from, final int to) {
+        return new LoggingEventsView(events, positions, from, to);
+    }
+
+    private final LoggingEvent[] events;
+    private final int[] positions;
+    private final int from;
+    private final int to;
+
+    private LoggingEventsView(final LoggingEvent[] events, final int[] positions, final int from, final int to) {
+        super();
+        this.events = events;
+        this.positions = positions;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public LoggingEvent get(final int index) {
+        checkElementIndex(index, size());
+        final int position = from + index;
+        return positions == null ? events[position] : events[positions[position]];
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public LoggingEventsView subList(final int fromIndex, final int toIndex) {
+        checkPositionIndexes(fromIndex, toIndex, size());
+        return new LoggingEventsView(events, positions, from + fromIndex, from + toIndex);
+    }
+}
@@ -0,0 +1,150 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Sets;
+
+/**
+ * <p>
+ * A named, filtered view of all the {@link LoggingEvent}s logged on the loggers of a {@link TestLoggerFactory}, by ANY
+ * thread, registered via {@link TestLoggerFactory#registerView(String, Predicate)}.
+ * </p>
+ * <p>
+ * The view is maintained incrementally as each event is logged, so reading it is O(1) however many events have been
+ * logged; it is emptied whenever the factory's events are cleared, and loses any of its events that the factory evicts,
+ * sheds or expires.
+ * </p>
+ * <p>
+ * The predicate is applied on the logging thread.  If it throws, the logging call is unaffected but the view fails: it
+ * stops being maintained, and reading it throws an IllegalStateException caused by the predicate's exception.
+ * </p>
+ */
+public final class MaterializedView {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final String name;
+    private final Predicate<LoggingEvent> predicate;
+    private LoggingEvent[] events = new LoggingEvent[INITIAL_CAPACITY];
+    private int size = 0;
+    /** The index of the view's first event; those before it have expired or been removed, and go when it is compacted. */
+    private int start = 0;
+    private RuntimeException failure;
+    private final LoggingEventStore.Listener listener = new LoggingEventStore.Listener() {
+        @Override
+        public void added(final LoggingEvent event) {
+            if (matches(event)) {
+                append(event);
+            }
+        }
+
+        @Override
+        public void cleared() {
+            reset();
+        }
+
+        @Override
+        public void removed(final List<LoggingEvent> removed) {
+            remove(removed);
+        }
+    };
+
+    MaterializedView(final String name, final Predicate<LoggingEvent> predicate) {
+        this.name = name;
+        this.predicate = predicate;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return an unmodifiable snapshot view, made without copying, of the events currently in this view
+     * @throws IllegalStateException if the view's predicate has thrown
+     */
+    public synchronized List<LoggingEvent> getLoggingEvents() {
+        checkNotFailed();
+        return LoggingEventsView.of(events, start, size);
+    }
+
+    /**
+     * @return the number of events currently in this view
+     * @throws IllegalStateException if the view's predicate has thrown
+     */
+    public synchronized int size() {
+        checkNotFailed();
+        return size - start;
+    }
+
+    private void checkNotFailed() {
+        if (failure != null) {
+            throw new IllegalStateException(this + " failed when its predicate threw", failure);
+        }
+    }
+
+    private synchronized boolean matches(final LoggingEvent event) {
+        if (failure != null) {
+            return false;
+        }
+        try {
+            return predicate.apply(event);
+        } catch (final RuntimeException e) {
+            failure = e;
+            reset();
+            return false;
+        }
+    }
+
+    LoggingEventStore.Listener listener() {
+        return listener;
+    }
+
+    private synchronized void append(final LoggingEvent event) {
+        if (size == events.length) {
+            events = Arrays.copyOf(events, size * 2);
+        }
+        events[size++] = event;
+    }
+
+    /**
+     * Removes the given events, in the order they were added to the store.  Those expired, and usually those evicted, are
+     * the oldest, so are found at the start of the view and just skipped; the events are only copied when one removed from
+     * further in is in the view, or when the skipped events outnumber the rest, so each is copied at most once on average.
+     */
+    private synchronized void remove(final List<LoggingEvent> removed) {
+        final Set<LoggingEvent> further = Sets.newIdentityHashSet();
+        for (final LoggingEvent event: removed) {
+            if (start < size && events[start] == event) {
+                start++;
+            } else if (matches(event)) {
+                further.add(event);
+            }
+        }
+        if (!further.isEmpty() || start > 0 && start >= size - start) {
+            final LoggingEvent[] remaining = new LoggingEvent[Math.max(INITIAL_CAPACITY, size - start)];
+            int remainingSize = 0;
+            for (int index = start; index < size; index++) {
+                if (!further.contains(events[index])) {
+                    remaining[remainingSize++] = events[index];
+                }
+            }
+            events = remaining;
+            start = 0;
+            size = remainingSize;
+        }
+    }
+
+    private synchronized void reset() {
+        events = new LoggingEvent[INITIAL_CAPACITY];
+        start = 0;
+        size = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "MaterializedView[" + name + "]";
+    }
+}
@@ -0,0 +1,79 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.AbstractList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.RandomAccess;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+/**
+ * Unmodifiable view of several snapshots of events merged by timestamp; the events of each snapshot stay in their order,
+ * and events with the same timestamp are taken from the earlier snapshot first.  The merge is done lazily, only as far as
+ * the view has been read, so reading the first few events of a large merge does not pay for the rest.
+ */
+final class MergedLoggingEventsView extends AbstractList<LoggingEvent> implements RandomAccess {
+
+    private final List<List<LoggingEvent>> sources;
+    private final int size;
+    private final LoggingEvent[] merged;
+    private int mergedSize = 0;
+    private PriorityQueue<int[]> next;
+
+    /**
+     * @param sources snapshots of events, each in timestamp order, that will not change
+     */
+    MergedLoggingEventsView(final List<List<LoggingEvent>> sources) {
+        super();
+        this.sources = sources;
+        int total = 0;
+        for (final List<LoggingEvent> source: sources) {
+            total += source.size();
+        }
+        this.size = total;
+        this.merged = new LoggingEvent[total];
+    }
+
+    @Override
+    public synchronized LoggingEvent get(final int index) {
+        checkElementIndex(index, size);
+        if (next == null) {
+            next = cursors();
+        }
+        while (mergedSize <= index) {
+            final int[] cursor = next.remove();
+            final List<LoggingEvent> source = sources.get(cursor[0]);
+            merged[mergedSize++] = source.get(cursor[1]);
+            if (++cursor[1] < source.size()) {
+                next.add(cursor);
+            }
+        }
+        return merged[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private PriorityQueue<int[]> cursors() {
+        final PriorityQueue<int[]> cursors = new PriorityQueue<>(Math.max(1, sources.size()), new Comparator<int[]>() {
+            @Override
+            public int compare(final int[] first, final int[] second) {
+                final int byTimestamp = Long.compare(timestamp(first), timestamp(second));
+                return byTimestamp != 0 ? byTimestamp : Integer.compare(first[0], second[0]);
+            }
+        });
+        for (int source = 0; source < sources.size(); source++) {
+            if (!sources.get(source).isEmpty()) {
+                cursors.add(new int[] {source, 0});
+            }
+        }
+        return cursors;
+    }
+
+    private long timestamp(final int[] cursor) {
+        return sources.get(cursor[0]).get(cursor[1]).getTimestampMillis();
+    }
+}
@@ -0,0 +1,158 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Splits text into the overlapping three character substrings used by the message index, and works out which of them must
+ * be present in any message containing a given substring or matching a given regular expression.
+ */
+final class MessageTrigrams {
+
+    private static final int LENGTH = 3;
+    private static final int SUPPORTED_FLAGS = Pattern.MULTILINE | Pattern.DOTALL | Pattern.UNIX_LINES;
+
+    static Set<String> of(final String text) {
+        if (text.length() < LENGTH) {
+            return Collections.emptySet();
+        }
+        final Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + LENGTH <= text.length(); i++) {
+            trigrams.add(text.substring(i, i + LENGTH));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Conservatively extracts the literal runs that appear outside any group, character class or alternation in the given
+     * pattern and are not made optional by a quantifier.  Every match of the pattern must contain all of them, so must
+     * contain all of their trigrams.  Returns an empty set, meaning every message is a candidate, whenever the pattern uses
+     * a construct this does not understand.
+     *
+     * @return trigrams that any message the pattern finds a match in must contain
+     */
+    static Set<String> requiredBy(final Pattern pattern) {
+        if ((pattern.flags() & Pattern.LITERAL) != 0) {
+            return of(pattern.pattern());
+        }
+        final String regex = pattern.pattern();
+        if ((pattern.flags() & ~SUPPORTED_FLAGS) != 0 || regex.contains("(?") || regex.contains("|")
+                || regex.contains("\\Q")) {
+            return Collections.emptySet();
+        }
+        final Set<String> trigrams = new HashSet<>();
+        final StringBuilder run = new StringBuilder();
+        int i = 0;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    endRun(run, trigrams);
+                    i = skipEscapeArguments(regex, i + 2);
+                } else {
+                    run.append(regex.charAt(i + 1));
+                    i += 2;
+                }
+            } else if (c == '*' || c == '?' || c == '{') {
+                dropLast(run);
+                endRun(run, trigrams);
+                i = c == '{' ? skipPast(regex, i, '{', '}') : i + 1;
+            } else if (c == '+') {
+                endRun(run, trigrams);
+                i++;
+            } else if (c == '[') {
+                endRun(run, trigrams);
+                i = skipClass(regex, i);
+            } else if (c == '(') {
+                endRun(run, trigrams);
+                i = skipPast(regex, i, '(', ')');
+            } else if (c == '.' || c == '^' || c == '$' || c == ')' || c == ']' || c == '}') {
+                endRun(run, trigrams);
+                i++;
+            } else {
+                run.append(c);
+                i++;
+            }
+        }
+        endRun(run, trigrams);
+        return trigrams;
+    }
+
+    private static int skipEscapeArguments(final String regex, final int start) {
+        int i = start;
+        while (i < regex.length() && Character.isLetterOrDigit(regex.charAt(i))) {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == '{') {
+            return skipPast(regex, i, '{', '}');
+        }
+        if (i < regex.length() && regex.charAt(i) == '<') {
+            return skipPast(regex, i, '<', '>');
+        }
+        return i;
+    }
+
+    private static void dropLast(final StringBuilder run) {
+        if (run.length() > 0) {
+            run.setLength(run.length() - 1);
+        }
+    }
+
+    private static void endRun(final StringBuilder run, final Set<String> trigrams) {
+        trigrams.addAll(of(run.toString()));
+        run.setLength(0);
+    }
+
+    /**
+     * @return the index just past the character class starting at the given index, following Java's rules that a ']'
+     *         first in a class, after any '^', is a literal, and that classes may be nested
+     */
+    private static int skipClass(final String regex, final int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '[') {
+                i = skipClass(regex, i);
+            } else if (c == ']') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    private static int skipPast(final String regex, final int start, final char open, final char close) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                i = skipClass(regex, i);
+                continue;
+            } else if (c == open) {
+                depth++;
+            } else if (c == close && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private MessageTrigrams() {
+        throw new UnsupportedOperationException("Not instantiable");
+    }
+}
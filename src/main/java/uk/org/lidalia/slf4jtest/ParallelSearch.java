@@ -0,0 +1,111 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Searches a random access list of events by recursively halving it, using O(1) {@link List#subList(int, int)} views, and
+ * checking ranges no larger than a threshold sequentially on a fork/join pool.  A list no larger than the threshold is
+ * searched on the calling thread.
+ */
+final class ParallelSearch {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
+    static ImmutableList<LoggingEvent> findAll(
+            final List<LoggingEvent> events, final Predicate<LoggingEvent> predicate, final int threshold) {
+        final FindAll task = new FindAll(events, predicate, threshold);
+        return ImmutableList.copyOf(events.size() <= threshold ? task.compute() : POOL.invoke(task));
+    }
+
+    static boolean anyMatch(final List<LoggingEvent> events, final Predicate<LoggingEvent> predicate, final int threshold) {
+        final AnyMatch task = new AnyMatch(events, predicate, threshold, new AtomicBoolean(false));
+        return events.size() <= threshold ? task.compute() : POOL.invoke(task);
+    }
+
+    private static final class FindAll extends RecursiveTask<List<LoggingEvent>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<LoggingEvent> events;
+        private final Predicate<LoggingEvent> predicate;
+        private final int threshold;
+
+        FindAll(final List<LoggingEvent> events, final Predicate<LoggingEvent> predicate, final int threshold) {
+            this.events = events;
+            this.predicate = predicate;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected List<LoggingEvent> compute() {
+            if (events.size() <= threshold) {
+                final List<LoggingEvent> matches = new ArrayList<>();
+                for (final LoggingEvent event: events) {
+                    if (predicate.apply(event)) {
+                        matches.add(event);
+                    }
+                }
+                return matches;
+            }
+            final int middle = events.size() / 2;
+            final FindAll first = new FindAll(events.subList(0, middle), predicate, threshold);
+            first.fork();
+            final List<LoggingEvent> secondMatches = new FindAll(events.subList(middle, events.size()), predicate, threshold)
+                    .compute();
+            final List<LoggingEvent> matches = first.join();
+            matches.addAll(secondMatches);
+            return matches;
+        }
+    }
+
+    private static final class AnyMatch extends RecursiveTask<Boolean> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<LoggingEvent> events;
+        private final Predicate<LoggingEvent> predicate;
+        private final int threshold;
+        private final AtomicBoolean found;
+
+        AnyMatch(final List<LoggingEvent> events, final Predicate<LoggingEvent> predicate, final int threshold,
+                 final AtomicBoolean found) {
+            this.events = events;
+            this.predicate = predicate;
+            this.threshold = threshold;
+            this.found = found;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if (found.get()) {
+                return true;
+            }
+            if (events.size() <= threshold) {
+                for (final LoggingEvent event: events) {
+                    if (predicate.apply(event)) {
+                        found.set(true);
+                        return true;
+                    }
+                }
+                return found.get();
+            }
+            final int middle = events.size() / 2;
+            final AnyMatch first = new AnyMatch(events.subList(0, middle), predicate, threshold, found);
+            first.fork();
+            final boolean secondMatched = new AnyMatch(events.subList(middle, events.size()), predicate, threshold, found)
+                    .compute();
+            return first.join() || secondMatched;
+        }
+    }
+
+    private ParallelSearch() {
+        throw new UnsupportedOperationException("Not instantiable");
+    }
+}
@@ -0,0 +1,100 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.Arrays;
+
+/**
+ * Append only list of ascending int positions, used to partition and index the events held in a {@link LoggingEventStore}.
+ * Not thread safe; callers are expected to guard it with the lock of the owning store.  Elements are never overwritten once
+ * written, and the backing array is replaced rather than modified when it grows, so an array obtained via
+ * {@link #array()} may safely be read up to the size at which it was obtained.
+ */
+final class PositionList {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int[] positions = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    void add(final int position) {
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, size * 2);
+        }
+        positions[size++] = position;
+    }
+
+    int get(final int index) {
+        return positions[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int[] array() {
+        return positions;
+    }
+
+    /**
+     * @return the index of the first position not less than the given one, or the size if there is none
+     */
+    int firstIndexAtOrAfter(final int position) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (positions[mid] < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return a new list of the positions present in both this and the other list, relying on both being ascending
+     */
+    PositionList retainAll(final PositionList other) {
+        final PositionList intersection = new PositionList();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (positions[i] < other.positions[j]) {
+                i++;
+            } else if (positions[i] > other.positions[j]) {
+                j++;
+            } else {
+                intersection.add(positions[i]);
+                i++;
+                j++;
+            }
+        }
+        return intersection;
+    }
+
+    /**
+     * @return a new list of the positions present in either this or the other list, relying on both being ascending
+     */
+    PositionList merge(final PositionList other) {
+        final PositionList union = new PositionList();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || i < size && positions[i] < other.positions[j]) {
+                union.add(positions[i++]);
+            } else if (i == size || other.positions[j] < positions[i]) {
+                union.add(other.positions[j++]);
+            } else {
+                union.add(positions[i]);
+                i++;
+                j++;
+            }
+        }
+        return union;
+    }
+
+    long estimateBytes() {
+        return HeapEstimates.align(HeapEstimates.OBJECT_HEADER + HeapEstimates.REFERENCE + 4)
+                + HeapEstimates.intArray(positions.length);
+    }
+}
@@ -0,0 +1,95 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.slf4j.Marker;
+
+import com.google.common.base.Function;
+
+import uk.org.lidalia.lang.Identity;
+import uk.org.lidalia.lang.RichObject;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Definition of an index maintained by a {@link LoggingEventStore}, mapping each {@link LoggingEvent} to the keys under which
+ * it can be looked up.  The same definition is used to filter events when the index has not been enabled on a store, so
+ * indexed and unindexed lookups always return the same events.
+ */
+final class SecondaryIndex extends RichObject {
+
+    /**
+     * Indexes events by the name of their marker and of every marker it references, directly or indirectly, so that a
+     * lookup matches the events for which {@link Marker#contains(String)} would be true.
+     */
+    static final SecondaryIndex MARKER = new SecondaryIndex("marker", new Function<LoggingEvent, Set<String>>() {
+        @Override
+        public Set<String> apply(final LoggingEvent event) {
+            if (!event.getMarker().isPresent()) {
+                return Collections.emptySet();
+            }
+            final Set<String> names = new HashSet<>();
+            addMarkerNames(event.getMarker().get(), names);
+            return names;
+        }
+    });
+
+    static final SecondaryIndex THREAD_NAME = new SecondaryIndex("threadName", new Function<LoggingEvent, Set<String>>() {
+        @Override
+        public Set<String> apply(final LoggingEvent event) {
+            return Collections.singleton(event.getThreadName());
+        }
+    });
+
+    /**
+     * Indexes events by every three character substring of their formatted message, so that substring and regular
+     * expression searches need only check the events containing all of the trigrams the search requires.
+     */
+    static final SecondaryIndex MESSAGE_TRIGRAMS = new SecondaryIndex("messageTrigrams",
+            new Function<LoggingEvent, Set<String>>() {
+                @Override
+                public Set<String> apply(final LoggingEvent event) {
+                    return MessageTrigrams.of(event.getFormattedMessage());
+                }
+            });
+
+    static SecondaryIndex mdc(final String key) {
+        checkNotNull(key);
+        return new SecondaryIndex("mdc." + key, new Function<LoggingEvent, Set<String>>() {
+            @Override
+            public Set<String> apply(final LoggingEvent event) {
+                final String value = event.getMdc().get(key);
+                return value == null ? Collections.<String>emptySet() : Collections.singleton(value);
+            }
+        });
+    }
+
+    private static void addMarkerNames(final Marker marker, final Set<String> names) {
+        if (names.add(marker.getName())) {
+            final Iterator<?> references = marker.iterator();
+            while (references != null && references.hasNext()) {
+                addMarkerNames((Marker) references.next(), names);
+            }
+        }
+    }
+
+    @Identity private final String name;
+    private final Function<LoggingEvent, Set<String>> keys;
+
+    private SecondaryIndex(final String name, final Function<LoggingEvent, Set<String>> keys) {
+        super();
+        this.name = name;
+        this.keys = keys;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Set<String> keysOf(final LoggingEvent event) {
+        return keys.apply(event);
+    }
+}
@@ -0,0 +1,41 @@
+package uk.org.lidalia.slf4jtest;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Maps each distinct string added to it to a single canonical instance, so that the message templates and thread names of
+ * the many events captured by a {@link TestLoggerFactory} share one copy of each value rather than each event holding its
+ * own.  Entries are held weakly, so that a value is dropped once no captured event refers to it, and values longer than the
+ * maximum length, such as messages built dynamically rather than from a template, are returned as they are rather than
+ * added; the dictionary therefore never retains a value beyond the events it was shared by.
+ */
+final class StringDictionary {
+
+    static final int DEFAULT_MAX_LENGTH = 256;
+
+    private final int maxLength;
+    private volatile Interner<String> entries = Interners.newWeakInterner();
+
+    StringDictionary(final int maxLength) {
+        checkArgument(maxLength >= 0, "maxLength must not be negative, was %s", maxLength);
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * @return the canonical instance equal to the value, adding the value as that instance if there is none; the value
+     *         itself if it is null or longer than the maximum length
+     */
+    String canonical(final String value) {
+        if (value == null || value.length() > maxLength) {
+            return value;
+        }
+        return entries.intern(value);
+    }
+
+    void clear() {
+        entries = Interners.newWeakInterner();
+    }
+}
@@ -6,6 +6,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 final class Suppliers {
 
@@ -27,6 +28,32 @@ final class Suppliers {
         };
     }
 
+    static Supplier<LoggingEventStore> makeEmptyLoggingEventStore() {
+        return new Supplier<LoggingEventStore>() {
+            @Override
+            public LoggingEventStore get() {
+                return new LoggingEventStore();
+            }
+        };
+    }
+
+    /**
+     * @param created a set to which each store created is added, so that stores held in thread locals can be reached
+     * @param timeToLive how long the stores created retain events for
+     * @return a supplier of empty stores
+     */
+    static Supplier<LoggingEventStore> makeEmptyLoggingEventStore(
+            final Set<LoggingEventStore> created, final TimeToLive timeToLive) {
+        return new Supplier<LoggingEventStore>() {
+            @Override
+            public LoggingEventStore get() {
+                final LoggingEventStore store = new LoggingEventStore(timeToLive);
+                created.add(store);
+                return store;
+            }
+        };
+    }
+
     private Suppliers() {
         throw new UnsupportedOperationException("Not instantiable");
     }
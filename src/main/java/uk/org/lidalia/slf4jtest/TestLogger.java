@@ -1,10 +1,14 @@
 package uk.org.lidalia.slf4jtest;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
 
+import org.joda.time.ReadableInstant;
 import org.slf4j.Logger;
 import org.slf4j.MDC;
 import org.slf4j.Marker;
@@ -12,8 +16,11 @@ import org.slf4j.helpers.FormattingTuple;
 import org.slf4j.helpers.MessageFormatter;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 import uk.org.lidalia.lang.ThreadLocal;
 import uk.org.lidalia.slf4jext.Level;
@@ -27,7 +34,6 @@ import static uk.org.lidalia.slf4jext.Level.ERROR;
 import static uk.org.lidalia.slf4jext.Level.INFO;
 import static uk.org.lidalia.slf4jext.Level.TRACE;
 import static uk.org.lidalia.slf4jext.Level.WARN;
-import static uk.org.lidalia.slf4jext.Level.enablableValueSet;
 
 /**
  * <p>
@@ -35,7 +41,8 @@ import static uk.org.lidalia.slf4jext.Level.enablableValueSet;
  * to access and remove them in order to facilitate writing tests that assert particular logging calls were made.
  * </p>
  * <p>
- * {@link LoggingEvent}s are stored in both an {@link ThreadLocal} and a normal {@link List}. The {@link #getLoggingEvents()}
+ * {@link LoggingEvent}s are stored in both an {@link ThreadLocal} and a shared store, each partitioned by {@link Level} so
+ * that the events at a level can be counted and retrieved without filtering every event. The {@link #getLoggingEvents()}
  * and {@link #clear()} methods reference the {@link ThreadLocal} events. The {@link #getAllLoggingEvents()} and
  * {@link #clearAll()} methods reference all events logged on this Logger.  This is in order to facilitate parallelising
  * tests - tests that use the thread local methods can be parallelised.
@@ -49,21 +56,35 @@ import static uk.org.lidalia.slf4jext.Level.enablableValueSet;
  * do so by passing the constants in {@link uk.org.lidalia.slf4jext.ConventionalLevelHierarchy} to
  * {@link #setEnabledLevels(ImmutableSet)} or {@link #setEnabledLevelsForAllThreads(ImmutableSet)}.
  * </p>
+ * <p>
+ * Alternatively a level may be configured for the logger or one of its ancestors in the logger name hierarchy via
+ * {@link TestLoggerFactory#setLevel(String, Level)} or the levels property of slf4jtest.properties, in which case that
+ * level and those above it are enabled unless levels have been set on the logger directly.
+ * </p>
  */
 @SuppressWarnings({ "PMD.ExcessivePublicCount", "PMD.TooManyMethods" })
 public class TestLogger implements Logger {
 
+    private static final Optional<ImmutableSet<Level>> INHERITED = Optional.absent();
+
     private final String name;
     private final TestLoggerFactory testLoggerFactory;
-    private final ThreadLocal<List<LoggingEvent>> loggingEvents = new ThreadLocal<>(
-            Suppliers.<LoggingEvent>makeEmptyMutableList());
-
-    private final List<LoggingEvent> allLoggingEvents = new CopyOnWriteArrayList<>();
-    private volatile ThreadLocal<ImmutableSet<Level>> enabledLevels = new ThreadLocal<>(enablableValueSet());
+    private final Set<LoggingEventStore> threadLoggingEvents =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<LoggingEventStore, Boolean>()));
+    private final TimeToLive timeToLive;
+    private final ThreadLocal<LoggingEventStore> loggingEvents;
+    private final LoggingEventStore allLoggingEvents;
+    private final LoggingEventPublisher publisher = new LoggingEventPublisher();
+    private volatile ThreadLocal<Optional<ImmutableSet<Level>>> enabledLevels = new ThreadLocal<>(INHERITED);
+    private volatile InheritedLevels inheritedLevels = InheritedLevels.UNRESOLVED;
+    private volatile CircuitBreaker circuitBreaker = CircuitBreaker.NONE;
 
     TestLogger(final String name, final TestLoggerFactory testLoggerFactory) {
         this.name = name;
         this.testLoggerFactory = testLoggerFactory;
+        this.timeToLive = new TimeToLive(testLoggerFactory.getTimeToLive());
+        this.loggingEvents = new ThreadLocal<>(Suppliers.makeEmptyLoggingEventStore(threadLoggingEvents, timeToLive));
+        this.allLoggingEvents = new LoggingEventStore(timeToLive);
     }
 
     public String getName() {
@@ -72,7 +93,8 @@ public class TestLogger implements Logger {
 
     /**
      * Removes all {@link LoggingEvent}s logged by this thread and resets the enabled levels of the logger
-     * to {@link uk.org.lidalia.slf4jext.Level#enablableValueSet()} for this thread.
+     * to those configured for it on the factory, by default {@link uk.org.lidalia.slf4jext.Level#enablableValueSet()},
+     * for this thread.
      */
     public void clear() {
         loggingEvents.get().clear();
@@ -81,11 +103,12 @@ public class TestLogger implements Logger {
 
     /**
      * Removes ALL {@link LoggingEvent}s logged on this logger, regardless of thread,
-     * and resets the enabled levels of the logger to {@link uk.org.lidalia.slf4jext.Level#enablableValueSet()}
-     * for ALL threads.
+     * and resets the enabled levels of the logger to those configured for it on the factory, by default
+     * {@link uk.org.lidalia.slf4jext.Level#enablableValueSet()}, for ALL threads.
      */
     public void clearAll() {
         allLoggingEvents.clear();
+        testLoggerFactory.release(this);
         loggingEvents.reset();
         enabledLevels.reset();
     }
@@ -94,14 +117,301 @@ public class TestLogger implements Logger {
      * @return all {@link LoggingEvent}s logged on this logger by this thread
      */
     public ImmutableList<LoggingEvent> getLoggingEvents() {
-        return copyOf(loggingEvents.get());
+        return copyOf(loggingEvents.get().getLoggingEvents());
+    }
+
+    /**
+     * @param level the level of events to return
+     * @return an unmodifiable snapshot view, made without copying, of the {@link LoggingEvent}s at the given level logged on
+     *         this logger by this thread
+     */
+    public List<LoggingEvent> getLoggingEvents(final Level level) {
+        return loggingEvents.get().getLoggingEvents(level);
+    }
+
+    /**
+     * @param level the level of events to count
+     * @return the number of {@link LoggingEvent}s at the given level logged on this logger by this thread
+     */
+    public int count(final Level level) {
+        return loggingEvents.get().count(level);
     }
 
     /**
      * @return all {@link LoggingEvent}s logged on this logger by ANY thread
      */
     public ImmutableList<LoggingEvent> getAllLoggingEvents() {
-        return copyOf(allLoggingEvents);
+        return copyOf(allLoggingEvents.getLoggingEvents());
+    }
+
+    /**
+     * Unlike {@link #getAllLoggingEvents()} this does not copy the events, and {@link List#subList(int, int)} on the result
+     * is O(1), so work over a large capture can be split into ranges cheaply.
+     *
+     * @return an unmodifiable, random access snapshot of all {@link LoggingEvent}s logged on this logger by ANY thread
+     */
+    public List<LoggingEvent> getAllLoggingEventsSnapshot() {
+        return allLoggingEvents.getLoggingEvents();
+    }
+
+    /**
+     * @param pageSize the number of events in each page; the last page may be smaller
+     * @return consecutive pages of a snapshot of all {@link LoggingEvent}s logged on this logger by ANY thread, each a
+     *         view over the stored events rather than a copy
+     */
+    public List<List<LoggingEvent>> getAllLoggingEventPages(final int pageSize) {
+        return Lists.partition(allLoggingEvents.getLoggingEvents(), pageSize);
+    }
+
+    /**
+     * @param level the level of events to return
+     * @return an unmodifiable snapshot view, made without copying, of the {@link LoggingEvent}s at the given level logged on
+     *         this logger by ANY thread
+     */
+    public List<LoggingEvent> getAllLoggingEvents(final Level level) {
+        return allLoggingEvents.getLoggingEvents(level);
+    }
+
+    /**
+     * @param level the level of events to count
+     * @return the number of {@link LoggingEvent}s at the given level logged on this logger by ANY thread
+     */
+    public int countAll(final Level level) {
+        return allLoggingEvents.count(level);
+    }
+
+    /**
+     * @param from the start of the window of time, inclusive
+     * @param to the end of the window of time, exclusive
+     * @return an unmodifiable snapshot view of the {@link LoggingEvent}s created within the window of time and logged on
+     *         this logger by ANY thread
+     */
+    public List<LoggingEvent> getAllLoggingEventsBetween(final ReadableInstant from, final ReadableInstant to) {
+        return allLoggingEvents.getLoggingEventsBetween(from.getMillis(), to.getMillis());
+    }
+
+    /**
+     * @return a publisher of the events logged on this logger by ANY thread, from the moment of subscribing
+     */
+    public LoggingEventPublisher getPublisher() {
+        return publisher;
+    }
+
+    /**
+     * Removes and returns all the events logged on this logger by ANY thread in a single atomic step, so that no event
+     * logged concurrently is lost or returned twice.  The events are handed over without being copied.  The same events
+     * are then removed from those logged by each thread and from those held by the factory, so that draining as capture
+     * continues keeps the memory retained steady; events logged concurrently are kept by all.
+     *
+     * @return the events removed, in the order they were logged
+     */
+    public List<LoggingEvent> drain() {
+        final List<LoggingEvent> drained = allLoggingEvents.drain();
+        final Set<LoggingEvent> events = Sets.newIdentityHashSet();
+        events.addAll(drained);
+        removeLoggingEvents(events);
+        testLoggerFactory.removeLoggingEvents(events);
+        return drained;
+    }
+
+    /**
+     * Adds the events returned by {@link #drain()} to the given collection.
+     *
+     * @param target the collection to add the events to
+     * @return the number of events added
+     */
+    public int drainTo(final Collection<? super LoggingEvent> target) {
+        final List<LoggingEvent> drained = drain();
+        target.addAll(drained);
+        return drained.size();
+    }
+
+    /**
+     * @return a rough estimate of the heap retained by the events logged on this logger by ANY thread, in bytes
+     */
+    public long getEstimatedBytes() {
+        return allLoggingEvents.getEstimatedBytes();
+    }
+
+    /**
+     * Drops events logged on this logger more than the given duration ago, overriding any time to live set on the factory
+     * via {@link TestLoggerFactory#setTimeToLive(long, TimeUnit)}.  Expired events are dropped in bulk as events are logged
+     * and read, so no timer runs.
+     *
+     * @param duration how long events are retained for
+     * @param unit the unit of the duration
+     * @throws IllegalArgumentException if the duration is less than a millisecond
+     */
+    public void setTimeToLive(final long duration, final TimeUnit unit) {
+        timeToLive.set(duration, unit);
+    }
+
+    /**
+     * Reverts to the time to live set on the factory, if any.
+     */
+    public void removeTimeToLive() {
+        timeToLive.unset();
+    }
+
+    /**
+     * Guards against code under test logging in a runaway loop.  Once this logger has been asked to log more than maxEvents
+     * events, or more than maxEventsPerSecond events within one second, since the limits were set, the logging call that
+     * crossed the limit throws an IllegalStateException naming this logger, the message template and the rate, and every
+     * later event is counted but not captured.
+     *
+     * @param maxEvents the maximum number of events to capture
+     * @param maxEventsPerSecond the maximum number of events to capture within any one second
+     */
+    public void setEventLimits(final long maxEvents, final int maxEventsPerSecond) {
+        circuitBreaker = new CircuitBreaker("TestLogger " + name, maxEvents, maxEventsPerSecond);
+    }
+
+    public void removeEventLimits() {
+        circuitBreaker = CircuitBreaker.NONE;
+    }
+
+    /**
+     * @return true if this logger has crossed one of the limits set by {@link #setEventLimits(long, int)}, so is only
+     *         counting events
+     */
+    public boolean isCountingOnly() {
+        return circuitBreaker.isOpen();
+    }
+
+    /**
+     * @return the number of events not captured since this logger crossed one of its limits
+     */
+    public long getUncapturedEventCount() {
+        return circuitBreaker.getUncapturedEventCount();
+    }
+
+    /**
+     * @return the diagnostic raised when this logger crossed one of its limits, or absent if it has not
+     */
+    public Optional<String> getEventLimitDiagnostic() {
+        return circuitBreaker.getDiagnostic();
+    }
+
+    /**
+     * Removes the given events, compared by identity, both from the events logged on this logger by ANY thread and from
+     * those logged by each thread, releasing this logger for eviction if none remain.
+     */
+    void removeLoggingEvents(final Set<LoggingEvent> events) {
+        allLoggingEvents.removeAll(events);
+        synchronized (threadLoggingEvents) {
+            for (final LoggingEventStore threadEvents: threadLoggingEvents) {
+                threadEvents.removeAll(events);
+            }
+        }
+        if (allLoggingEvents.size() == 0) {
+            testLoggerFactory.release(this);
+        }
+    }
+
+    /**
+     * Removes the events at the given levels logged on this logger, both from the events logged by ANY thread and from
+     * those logged by each thread.
+     */
+    void removeLevels(final Set<Level> levels) {
+        allLoggingEvents.removeLevels(levels);
+        synchronized (threadLoggingEvents) {
+            for (final LoggingEventStore threadEvents: threadLoggingEvents) {
+                threadEvents.removeLevels(levels);
+            }
+        }
+    }
+
+    /**
+     * @return a checkpoint from which to read the events logged on this logger by ANY thread afterwards
+     */
+    public Checkpoint checkpoint() {
+        return allLoggingEvents.checkpoint();
+    }
+
+    /**
+     * @param checkpoint a checkpoint previously returned by {@link #checkpoint()}
+     * @return the events logged on this logger by ANY thread since the checkpoint was taken, or since the events were last
+     *         cleared if that was later, without copying
+     */
+    public List<LoggingEvent> getAllLoggingEventsSince(final Checkpoint checkpoint) {
+        return allLoggingEvents.getLoggingEventsSince(checkpoint);
+    }
+
+    /**
+     * @param from a checkpoint previously returned by {@link #checkpoint()}
+     * @param to a checkpoint taken at the same time as or after from
+     * @return the events logged on this logger by ANY thread after the first checkpoint was taken and before the second, or since
+     *         the events were last cleared before the second if that was later, without copying; only events still stored
+     *         are returned, so none if the events have been cleared since the second was taken
+     */
+    public List<LoggingEvent> getAllLoggingEventsBetween(final Checkpoint from, final Checkpoint to) {
+        return allLoggingEvents.getLoggingEventsBetween(from, to);
+    }
+
+    /**
+     * Waits until an event matching the predicate has been logged on this logger by ANY thread, returning immediately if one
+     * already has.  The waiting thread is woken by the logging thread as soon as a matching event is logged.
+     *
+     * @param predicate the condition the event must satisfy
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return the first matching event, or absent if none was logged before the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the predicate threw on an event; the exception is its cause
+     */
+    public Optional<LoggingEvent> awaitEvent(final Predicate<LoggingEvent> predicate, final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        return EventWaiter.awaitEvent(allLoggingEvents, predicate, timeout, unit);
+    }
+
+    /**
+     * Waits until at least count events matching the predicate have been logged on this logger by ANY thread, including any
+     * already logged.  The waiting thread is woken by the logging thread as soon as the count is reached.
+     *
+     * @param predicate the condition the events must satisfy
+     * @param count the number of matching events to wait for
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if the count was reached, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the predicate threw on an event; the exception is its cause
+     */
+    public boolean awaitCount(
+            final Predicate<LoggingEvent> predicate, final int count, final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        return EventWaiter.awaitCount(allLoggingEvents, predicate, count, timeout, unit);
+    }
+
+    /**
+     * @param expected the events expected to have been logged on this logger by ANY thread
+     * @return true if exactly the expected events, and no others, have been logged on this logger, in any order
+     */
+    public boolean containsExactlyInAnyOrder(final Iterable<LoggingEvent> expected) {
+        return LoggingEventsDifference.containsExactlyInAnyOrder(allLoggingEvents.getLoggingEvents(), expected);
+    }
+
+    /**
+     * @param expected the events expected to have been logged on this logger by ANY thread
+     * @return true if every expected event has been logged on this logger at least as many times as it is expected
+     */
+    public boolean containsAll(final Iterable<LoggingEvent> expected) {
+        return LoggingEventsDifference.containsAll(allLoggingEvents.getLoggingEvents(), expected);
+    }
+
+    /**
+     * @param unexpected events which should not have been logged on this logger by ANY thread
+     * @return true if none of the unexpected events have been logged on this logger
+     */
+    public boolean containsNone(final Iterable<LoggingEvent> unexpected) {
+        return LoggingEventsDifference.containsNone(allLoggingEvents.getLoggingEvents(), unexpected);
+    }
+
+    /**
+     * @param expected the events expected to have been logged on this logger by ANY thread
+     * @return the events missing from and unexpectedly present in this logger, ignoring order
+     */
+    public LoggingEventsDifference differenceFrom(final Iterable<LoggingEvent> expected) {
+        return LoggingEventsDifference.between(expected, allLoggingEvents.getLoggingEvents());
     }
 
     /**
@@ -109,7 +419,7 @@ public class TestLogger implements Logger {
      */
     @Override
     public boolean isTraceEnabled() {
-        return enabledLevels.get().contains(TRACE);
+        return enabledLevels().contains(TRACE);
     }
 
     @Override
@@ -139,7 +449,7 @@ public class TestLogger implements Logger {
 
     @Override
     public boolean isTraceEnabled(final Marker marker) {
-        return enabledLevels.get().contains(TRACE);
+        return enabledLevels().contains(TRACE);
     }
 
     @Override
@@ -172,7 +482,7 @@ public class TestLogger implements Logger {
      */
     @Override
     public boolean isDebugEnabled() {
-        return enabledLevels.get().contains(DEBUG);
+        return enabledLevels().contains(DEBUG);
     }
 
     @Override
@@ -202,7 +512,7 @@ public class TestLogger implements Logger {
 
     @Override
     public boolean isDebugEnabled(final Marker marker) {
-        return enabledLevels.get().contains(DEBUG);
+        return enabledLevels().contains(DEBUG);
     }
 
     @Override
@@ -235,7 +545,7 @@ public class TestLogger implements Logger {
      */
     @Override
     public boolean isInfoEnabled() {
-        return enabledLevels.get().contains(INFO);
+        return enabledLevels().contains(INFO);
     }
 
     @Override
@@ -265,7 +575,7 @@ public class TestLogger implements Logger {
 
     @Override
     public boolean isInfoEnabled(final Marker marker) {
-        return enabledLevels.get().contains(INFO);
+        return enabledLevels().contains(INFO);
     }
 
     @Override
@@ -298,7 +608,7 @@ public class TestLogger implements Logger {
      */
     @Override
     public boolean isWarnEnabled() {
-        return enabledLevels.get().contains(WARN);
+        return enabledLevels().contains(WARN);
     }
 
     @Override
@@ -328,7 +638,7 @@ public class TestLogger implements Logger {
 
     @Override
     public boolean isWarnEnabled(final Marker marker) {
-        return enabledLevels.get().contains(WARN);
+        return enabledLevels().contains(WARN);
     }
 
     @Override
@@ -361,7 +671,7 @@ public class TestLogger implements Logger {
      */
     @Override
     public boolean isErrorEnabled() {
-        return enabledLevels.get().contains(ERROR);
+        return enabledLevels().contains(ERROR);
     }
 
     @Override
@@ -391,7 +701,7 @@ public class TestLogger implements Logger {
 
     @Override
     public boolean isErrorEnabled(final Marker marker) {
-        return enabledLevels.get().contains(ERROR);
+        return enabledLevels().contains(ERROR);
     }
 
     @Override
@@ -446,10 +756,19 @@ public class TestLogger implements Logger {
             final Optional<Throwable> throwable,
             final String format,
             final Object... args) {
-        if (enabledLevels.get().contains(level)) {
-            final LoggingEvent event = new LoggingEvent(of(this), level, mdc(), marker, throwable, format, args);
+        if (enabledLevels().contains(level)) {
+            testLoggerFactory.checkMemoryBudget();
+            if (!circuitBreaker.admit(name, format) || !testLoggerFactory.admit(name, format)) {
+                return;
+            }
+            final LoggingEvent event = new LoggingEvent(
+                    of(this), testLoggerFactory.canonical(ThreadNames.current()), level, mdc(), marker,
+                    testLoggerFactory.captureThrowable(throwable), testLoggerFactory.canonical(format),
+                    testLoggerFactory.captureArguments(args));
             allLoggingEvents.add(event);
+            testLoggerFactory.retain(this);
             loggingEvents.get().add(event);
+            publisher.publish(event);
             testLoggerFactory.addLoggingEvent(event);
             optionallyPrint(event);
         }
@@ -470,7 +789,26 @@ public class TestLogger implements Logger {
      * @return the set of levels enabled for this logger on this thread
      */
     public ImmutableSet<Level> getEnabledLevels() {
-        return enabledLevels.get();
+        return enabledLevels();
+    }
+
+    private ImmutableSet<Level> enabledLevels() {
+        final Optional<ImmutableSet<Level>> explicitLevels = enabledLevels.get();
+        return explicitLevels.isPresent() ? explicitLevels.get() : inheritedLevels();
+    }
+
+    /**
+     * Resolves the levels configured on the factory for this logger only when the configuration has changed since they
+     * were last resolved, so checking a level does not ordinarily walk the logger name hierarchy.
+     */
+    private ImmutableSet<Level> inheritedLevels() {
+        final LevelConfiguration configuration = testLoggerFactory.getLevelConfiguration();
+        InheritedLevels resolved = inheritedLevels;
+        if (resolved.version != configuration.getVersion()) {
+            resolved = new InheritedLevels(configuration.getVersion(), configuration.enabledLevelsFor(name));
+            inheritedLevels = resolved;
+        }
+        return resolved.levels;
     }
 
     /**
@@ -483,7 +821,7 @@ public class TestLogger implements Logger {
      *                      does not affect enabled levels for this logger in other threads
      */
     public void setEnabledLevels(final ImmutableSet<Level> enabledLevels) {
-        this.enabledLevels.set(enabledLevels);
+        this.enabledLevels.set(Optional.of(enabledLevels));
     }
 
     /**
@@ -508,7 +846,7 @@ public class TestLogger implements Logger {
      * @param enabledLevelsForAllThreads levels which will be considered enabled for this logger IN ALL THREADS
      */
     public void setEnabledLevelsForAllThreads(final ImmutableSet<Level> enabledLevelsForAllThreads) {
-        this.enabledLevels = new ThreadLocal<>(enabledLevelsForAllThreads);
+        this.enabledLevels = new ThreadLocal<>(Optional.of(enabledLevelsForAllThreads));
     }
 
     /**
@@ -522,4 +860,17 @@ public class TestLogger implements Logger {
     public void setEnabledLevelsForAllThreads(final Level... enabledLevelsForAllThreads) {
         setEnabledLevelsForAllThreads(ImmutableSet.copyOf(enabledLevelsForAllThreads));
     }
+
+    private static final class InheritedLevels {
+
+        private static final InheritedLevels UNRESOLVED = new InheritedLevels(-1, Level.enablableValueSet());
+
+        private final long version;
+        private final ImmutableSet<Level> levels;
+
+        InheritedLevels(final long version, final ImmutableSet<Level> levels) {
+            this.version = version;
+            this.levels = levels;
+        }
+    }
 }
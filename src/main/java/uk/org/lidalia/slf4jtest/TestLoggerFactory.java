@@ -1,27 +1,50 @@
 package uk.org.lidalia.slf4jtest;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
+import org.joda.time.ReadableInstant;
 import org.slf4j.ILoggerFactory;
+import org.slf4j.Logger;
+import org.slf4j.Marker;
 
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ConcurrentHashMultiset;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 import uk.org.lidalia.lang.LazyValue;
 import uk.org.lidalia.lang.ThreadLocal;
 import uk.org.lidalia.slf4jext.Level;
 
 import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 public final class TestLoggerFactory implements ILoggerFactory {
 
+    public static final int DEFAULT_PARALLELISM_THRESHOLD = 10000;
+
+    private static final Set<Level> LOW_PRIORITY_LEVELS = Sets.immutableEnumSet(Level.TRACE, Level.DEBUG);
     private static final LazyValue<TestLoggerFactory> INSTANCE = new LazyValue<>(new TestLoggerFactoryMaker());
 
     public static TestLoggerFactory getInstance() {
@@ -56,15 +79,46 @@ public final class TestLoggerFactory implements ILoggerFactory {
         return getInstance().getLoggingEventsFromLoggers();
     }
 
+    /**
+     * @return an unmodifiable snapshot view, as returned by {@link #getAllLoggingEventsFromLoggers()}
+     */
     public static List<LoggingEvent> getAllLoggingEvents() {
         return getInstance().getAllLoggingEventsFromLoggers();
     }
 
-    private final ConcurrentMap<String, TestLogger> loggers = new ConcurrentHashMap<>();
-    private final List<LoggingEvent> allLoggingEvents = new CopyOnWriteArrayList<>();
-    private final ThreadLocal<List<LoggingEvent>> loggingEvents =
-            new ThreadLocal<>(Suppliers.<LoggingEvent>makeEmptyMutableList());
+    public static List<LoggingEvent> getLoggingEvents(final Level level) {
+        return getInstance().getLoggingEventsFromLoggers(level);
+    }
+
+    public static List<LoggingEvent> getAllLoggingEvents(final Level level) {
+        return getInstance().getAllLoggingEventsFromLoggers(level);
+    }
+
+    private final LoggerRegistry loggers = new LoggerRegistry();
+    private final TimeToLive timeToLive = new TimeToLive();
+    private final LoggingEventStore allLoggingEvents = new LoggingEventStore(timeToLive);
+    private final Set<LoggingEventStore> threadLoggingEvents =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<LoggingEventStore, Boolean>()));
+    private final ThreadLocal<LoggingEventStore> loggingEvents =
+            new ThreadLocal<>(Suppliers.makeEmptyLoggingEventStore(threadLoggingEvents, timeToLive));
+    private final ConcurrentMap<String, MaterializedView> views = new ConcurrentHashMap<>();
+    private final LoggingEventPublisher publisher = new LoggingEventPublisher();
+    private final Expectations expectations = new Expectations();
     private volatile Level printLevel;
+    private volatile LevelConfiguration levelConfiguration = LevelConfiguration.EMPTY;
+    /** The levels configured in slf4jtest.properties, which a reset restores. */
+    private volatile LevelConfiguration initialLevels = LevelConfiguration.EMPTY;
+    private volatile int parallelismThreshold = DEFAULT_PARALLELISM_THRESHOLD;
+    private volatile MemoryBudget memoryBudget = MemoryBudget.NONE;
+    private final Object memoryBudgetLock = new Object();
+    private final ConcurrentHashMultiset<Level> shedEventCounts = ConcurrentHashMultiset.create();
+    private final ConcurrentHashMultiset<String> shedEventCountsByLogger = ConcurrentHashMultiset.create();
+    private HeapPressureMonitor heapPressureMonitor;
+    private volatile CircuitBreaker circuitBreaker = CircuitBreaker.NONE;
+    private volatile ThrowableRetention throwableRetention = ThrowableRetention.LIVE;
+    private final AtomicLong throwableBytesSaved = new AtomicLong();
+    private volatile ArgumentCapture argumentCapture = ArgumentCapture.LIVE;
+    private final StringDictionary dictionary = new StringDictionary(StringDictionary.DEFAULT_MAX_LENGTH);
 
     public TestLoggerFactory() {
         this(Level.OFF);
@@ -79,7 +133,7 @@ public final class TestLoggerFactory implements ILoggerFactory {
     }
 
     public ImmutableMap<String, TestLogger> getAllLoggers() {
-        return ImmutableMap.copyOf(loggers);
+        return loggers.snapshot();
     }
 
     public TestLogger getLogger(final Class<?> aClass) {
@@ -87,19 +141,92 @@ public final class TestLoggerFactory implements ILoggerFactory {
     }
 
     public TestLogger getLogger(final String name) {
-        final TestLogger newLogger = new TestLogger(name, this);
-        return fromNullable(loggers.putIfAbsent(name, newLogger)).or(newLogger);
+        return loggers.register(new TestLogger(name, this));
+    }
+
+    /**
+     * Switches the logger registry to a mode in which loggers that hold no events, as returned by
+     * {@link TestLogger#getAllLoggingEvents()}, are only weakly referenced, so that once nothing else references them they
+     * can be garbage collected and removed from the registry.  Useful when the code under test creates loggers with
+     * dynamic names.  Any levels set directly on an evicted logger are lost; getting a logger of the same name again
+     * creates a new one.  Enabling eviction twice has no effect.
+     */
+    public void enableLoggerEviction() {
+        loggers.enableEviction();
+    }
+
+    /**
+     * @return the number of loggers currently registered
+     */
+    public int getLoggerCount() {
+        return loggers.size();
+    }
+
+    /**
+     * @return the number of loggers removed from the registry since {@link #enableLoggerEviction()} was called
+     */
+    public long getEvictedLoggerCount() {
+        return loggers.getEvictionCount();
+    }
+
+    void retain(final TestLogger logger) {
+        loggers.retain(logger);
+    }
+
+    void release(final TestLogger logger) {
+        loggers.release(logger);
+    }
+
+    /**
+     * @param name the name of the logger at the root of the hierarchy to return
+     * @return the logger with the given name, if it exists, and every logger below it in the dotted name hierarchy, found
+     *         without looking at any other logger; every logger if the name is empty
+     */
+    public ImmutableMap<String, TestLogger> getLoggersUnder(final String name) {
+        final ImmutableMap.Builder<String, TestLogger> loggersUnder = ImmutableMap.builder();
+        for (final TestLogger logger: loggers.loggersUnder(checkNotNull(name))) {
+            loggersUnder.put(logger.getName(), logger);
+        }
+        return loggersUnder.build();
+    }
+
+    /**
+     * Reads only the events of the loggers returned by {@link #getLoggersUnder(String)}, merging them by timestamp; the
+     * events of each logger stay in the order they were logged on it, and events with the same timestamp on different
+     * loggers are ordered by logger name.
+     *
+     * @param name the name of the logger at the root of the hierarchy to return events from
+     * @return a snapshot view of all the events logged by ANY thread on the named logger or any logger below it in the
+     *         dotted name hierarchy; the events are merged lazily as the view is read, and not copied at all when only one
+     *         logger matches
+     */
+    public List<LoggingEvent> getAllLoggingEventsUnder(final String name) {
+        final List<TestLogger> loggersUnder = loggers.loggersUnder(checkNotNull(name));
+        if (loggersUnder.size() == 1) {
+            return loggersUnder.get(0).getAllLoggingEventsSnapshot();
+        }
+        Collections.sort(loggersUnder, new Comparator<TestLogger>() {
+            @Override
+            public int compare(final TestLogger first, final TestLogger second) {
+                return first.getName().compareTo(second.getName());
+            }
+        });
+        final List<List<LoggingEvent>> sources = new ArrayList<>(loggersUnder.size());
+        for (final TestLogger logger: loggersUnder) {
+            sources.add(logger.getAllLoggingEventsSnapshot());
+        }
+        return new MergedLoggingEventsView(sources);
     }
 
     public void clearLoggers() {
-        for (final TestLogger testLogger: loggers.values()) {
+        for (final TestLogger testLogger: loggers.loggers()) {
             testLogger.clear();
         }
         loggingEvents.get().clear();
     }
 
     public void clearAllLoggers() {
-        for (final TestLogger testLogger: loggers.values()) {
+        for (final TestLogger testLogger: loggers.loggers()) {
             testLogger.clearAll();
         }
         loggingEvents.reset();
@@ -109,37 +236,876 @@ public final class TestLoggerFactory implements ILoggerFactory {
     void doReset() {
         clearAllLoggers();
         loggers.clear();
+        for (final String viewName: views.keySet()) {
+            removeView(viewName);
+        }
+        publisher.cancelAll();
+        expectations.clear();
+        resetLevels();
+        parallelismThreshold = DEFAULT_PARALLELISM_THRESHOLD;
+        removeMemoryBudget();
+        disableHeapPressureShedding();
+        removeEventLimits();
+        removeTimeToLive();
+        retainLiveThrowables();
+        retainLiveArguments();
+        dictionary.clear();
+        throwableBytesSaved.set(0);
+        shedEventCounts.clear();
+        shedEventCountsByLogger.clear();
     }
 
     public ImmutableList<LoggingEvent> getLoggingEventsFromLoggers() {
-        return ImmutableList.copyOf(loggingEvents.get());
+        return ImmutableList.copyOf(loggingEvents.get().getLoggingEvents());
     }
 
+    /**
+     * @return an unmodifiable snapshot view, made without copying, of the {@link LoggingEvent}s logged on any logger by ANY
+     *         thread; it does not reflect events logged after it is returned, so call this again to read them
+     */
     public List<LoggingEvent> getAllLoggingEventsFromLoggers() {
-        return allLoggingEvents;
+        return allLoggingEvents.getLoggingEvents();
+    }
+
+    /**
+     * @param pageSize the number of events in each page; the last page may be smaller
+     * @return consecutive pages of a snapshot of all {@link LoggingEvent}s logged on any of this factory's loggers by ANY
+     *         thread, each a view over the stored events rather than a copy
+     */
+    public List<List<LoggingEvent>> getAllLoggingEventPages(final int pageSize) {
+        return Lists.partition(allLoggingEvents.getLoggingEvents(), pageSize);
+    }
+
+    /**
+     * @param level the level of events to return
+     * @return an unmodifiable snapshot view, made without copying, of the {@link LoggingEvent}s at the given level logged on
+     *         any logger by this thread
+     */
+    public List<LoggingEvent> getLoggingEventsFromLoggers(final Level level) {
+        return loggingEvents.get().getLoggingEvents(level);
+    }
+
+    /**
+     * @param level the level of events to return
+     * @return an unmodifiable snapshot view, made without copying, of the {@link LoggingEvent}s at the given level logged on
+     *         any logger by ANY thread
+     */
+    public List<LoggingEvent> getAllLoggingEventsFromLoggers(final Level level) {
+        return allLoggingEvents.getLoggingEvents(level);
+    }
+
+    /**
+     * @param level the level of events to count
+     * @return the number of {@link LoggingEvent}s at the given level logged on any logger by this thread
+     */
+    public int count(final Level level) {
+        return loggingEvents.get().count(level);
+    }
+
+    /**
+     * @param level the level of events to count
+     * @return the number of {@link LoggingEvent}s at the given level logged on any logger by ANY thread
+     */
+    public int countAll(final Level level) {
+        return allLoggingEvents.count(level);
+    }
+
+    /**
+     * Indexes all events logged on any logger by the names of their markers, including the markers they reference, so that
+     * {@link #getAllLoggingEventsWithMarker(Marker)} does not need to scan every event.
+     */
+    public void enableMarkerIndex() {
+        allLoggingEvents.addIndex(SecondaryIndex.MARKER);
+    }
+
+    /**
+     * Indexes all events logged on any logger by the value of the given MDC key, so that
+     * {@link #getAllLoggingEventsWithMdc(String, String)} does not need to scan every event for that key.
+     *
+     * @param key the MDC key to index
+     */
+    public void enableMdcIndex(final String key) {
+        allLoggingEvents.addIndex(SecondaryIndex.mdc(key));
+    }
+
+    /**
+     * Indexes all events logged on any logger by the name of the thread that logged them, so that
+     * {@link #getAllLoggingEventsFromThread(String)} does not need to scan every event.
+     */
+    public void enableThreadNameIndex() {
+        allLoggingEvents.addIndex(SecondaryIndex.THREAD_NAME);
+    }
+
+    /**
+     * Indexes all events logged on any logger by the trigrams of their formatted message, so that
+     * {@link #getAllLoggingEventsWithMessageContaining(String)} and {@link #getAllLoggingEventsWithMessageMatching(Pattern)}
+     * only need to check the events which could possibly match.  This costs formatting each message as it is logged, and
+     * the memory reported by {@link #getMessageIndexStatistics()}.
+     */
+    public void enableMessageIndex() {
+        allLoggingEvents.addIndex(SecondaryIndex.MESSAGE_TRIGRAMS);
+    }
+
+    /**
+     * @return the size and build cost of the message index, if it has been enabled
+     */
+    public Optional<IndexStatistics> getMessageIndexStatistics() {
+        return allLoggingEvents.getStatistics(SecondaryIndex.MESSAGE_TRIGRAMS);
+    }
+
+    /**
+     * @param marker the marker to look for
+     * @return an unmodifiable snapshot view of the {@link LoggingEvent}s logged on any logger by ANY thread whose marker is or
+     *         references the given marker
+     */
+    public List<LoggingEvent> getAllLoggingEventsWithMarker(final Marker marker) {
+        return allLoggingEvents.getLoggingEvents(SecondaryIndex.MARKER, marker.getName());
+    }
+
+    /**
+     * @param key the MDC key to look for
+     * @param value the value the MDC key must have
+     * @return an unmodifiable snapshot view of the {@link LoggingEvent}s logged on any logger by ANY thread whose MDC maps the
+     *         given key to the given value
+     */
+    public List<LoggingEvent> getAllLoggingEventsWithMdc(final String key, final String value) {
+        return allLoggingEvents.getLoggingEvents(SecondaryIndex.mdc(key), value);
+    }
+
+    /**
+     * @param threadName the name of the thread to look for
+     * @return an unmodifiable snapshot view of the {@link LoggingEvent}s logged on any logger by the named thread
+     */
+    public List<LoggingEvent> getAllLoggingEventsFromThread(final String threadName) {
+        return allLoggingEvents.getLoggingEvents(SecondaryIndex.THREAD_NAME, threadName);
+    }
+
+    /**
+     * @param substring the text to look for
+     * @return the {@link LoggingEvent}s logged on any logger by ANY thread whose formatted message contains the given text
+     */
+    public ImmutableList<LoggingEvent> getAllLoggingEventsWithMessageContaining(final String substring) {
+        checkNotNull(substring);
+        return allLoggingEvents.getLoggingEvents(SecondaryIndex.MESSAGE_TRIGRAMS, MessageTrigrams.of(substring),
+                new Predicate<LoggingEvent>() {
+                    @Override
+                    public boolean apply(final LoggingEvent event) {
+                        return event.getFormattedMessage().contains(substring);
+                    }
+                });
+    }
+
+    /**
+     * @param pattern the regular expression to look for
+     * @return the {@link LoggingEvent}s logged on any logger by ANY thread whose formatted message contains a match for the
+     *         given regular expression
+     */
+    public ImmutableList<LoggingEvent> getAllLoggingEventsWithMessageMatching(final Pattern pattern) {
+        return allLoggingEvents.getLoggingEvents(SecondaryIndex.MESSAGE_TRIGRAMS, MessageTrigrams.requiredBy(pattern),
+                new Predicate<LoggingEvent>() {
+                    @Override
+                    public boolean apply(final LoggingEvent event) {
+                        return pattern.matcher(event.getFormattedMessage()).find();
+                    }
+                });
+    }
+
+    /**
+     * @param from the start of the window of time, inclusive
+     * @param to the end of the window of time, exclusive
+     * @return an unmodifiable snapshot view of the {@link LoggingEvent}s created within the window of time and logged on
+     *         any logger by ANY thread
+     */
+    public List<LoggingEvent> getAllLoggingEventsBetween(final ReadableInstant from, final ReadableInstant to) {
+        return allLoggingEvents.getLoggingEventsBetween(from.getMillis(), to.getMillis());
+    }
+
+    /**
+     * Registers a view of the {@link LoggingEvent}s logged on any logger by ANY thread which match the given predicate.  The
+     * view initially contains the matching events already logged, and is then updated as each event is logged, so that
+     * reading it does not require filtering all events.
+     *
+     * @param name the name to register the view under
+     * @param predicate the condition events must satisfy to be in the view; evaluated once per event, as it is logged
+     * @return the view
+     * @throws IllegalArgumentException if a view is already registered under the given name
+     */
+    public MaterializedView registerView(final String name, final Predicate<LoggingEvent> predicate) {
+        final MaterializedView view = new MaterializedView(checkNotNull(name), checkNotNull(predicate));
+        checkArgument(views.putIfAbsent(name, view) == null, "A view named %s is already registered", name);
+        allLoggingEvents.addListener(view.listener());
+        return view;
+    }
+
+    /**
+     * @param name the name of a view registered with {@link #registerView(String, Predicate)}
+     * @return the view, if one is registered under the given name
+     */
+    public Optional<MaterializedView> getView(final String name) {
+        return fromNullable(views.get(name));
+    }
+
+    /**
+     * Stops maintaining the named view, if one is registered.
+     *
+     * @param name the name of a view registered with {@link #registerView(String, Predicate)}
+     */
+    public void removeView(final String name) {
+        final MaterializedView view = views.remove(name);
+        if (view != null) {
+            allLoggingEvents.removeListener(view.listener());
+        }
+    }
+
+    /**
+     * @return a new query over the {@link LoggingEvent}s logged on any logger by ANY thread, which will make use of the level
+     *         partitions, timestamp column and any enabled indexes
+     */
+    public LoggingEventQuery query() {
+        return new LoggingEventQuery(allLoggingEvents);
+    }
+
+    /**
+     * Registers an event that must be logged on one of this factory's loggers, by ANY thread, from now on.  Each event
+     * is checked as it is logged, so {@link #verifyExpectations()} need not look back over all the events logged.
+     *
+     * @param predicate the condition an event must satisfy to meet the expectation
+     * @return the registered expectation
+     */
+    public Expectation expect(final Predicate<LoggingEvent> predicate) {
+        return expectations.add(new Expectation(checkNotNull(predicate), false));
+    }
+
+    /**
+     * @param event an event that must be logged
+     * @return the registered expectation
+     * @see #expect(Predicate)
+     */
+    public Expectation expect(final LoggingEvent event) {
+        return expect(Predicates.equalTo(event));
+    }
+
+    /**
+     * Registers an event that must not be logged on any of this factory's loggers, by ANY thread, from now on.  Logging a
+     * matching event fails fast: the logging call throws an AssertionError, and the failure is also reported by
+     * {@link #verifyExpectations()} in case the logging thread swallowed it.
+     *
+     * @param predicate the condition an event must satisfy to break the expectation
+     * @return the registered expectation
+     */
+    public Expectation forbid(final Predicate<LoggingEvent> predicate) {
+        return expectations.add(new Expectation(checkNotNull(predicate), true));
+    }
+
+    /**
+     * @param event an event that must not be logged
+     * @return the registered expectation
+     * @see #forbid(Predicate)
+     */
+    public Expectation forbid(final LoggingEvent event) {
+        return forbid(Predicates.equalTo(event));
+    }
+
+    /**
+     * @throws AssertionError if any expected event has not been logged or any forbidden event has
+     */
+    public void verifyExpectations() {
+        expectations.verify();
+    }
+
+    public void clearExpectations() {
+        expectations.clear();
+    }
+
+    /**
+     * @return a publisher of the events logged on any of this factory's loggers by ANY thread, from the moment of subscribing
+     */
+    public LoggingEventPublisher getPublisher() {
+        return publisher;
+    }
+
+    /**
+     * Removes and returns all the events logged on any of this factory's loggers by ANY thread in a single atomic step, so
+     * that no event logged concurrently is lost or returned twice.  The events are handed over without being copied.  The
+     * same events are then removed from the loggers they were logged on and from the events logged by each thread, so
+     * that draining as capture continues keeps the memory retained steady; events logged concurrently are kept by all.
+     *
+     * @return the events removed, in the order they were logged
+     */
+    public List<LoggingEvent> drain() {
+        final List<LoggingEvent> drained = allLoggingEvents.drain();
+        removeFromOtherStores(drained);
+        return drained;
+    }
+
+    /**
+     * Adds the events returned by {@link #drain()} to the given collection.
+     *
+     * @param target the collection to add the events to
+     * @return the number of events added
+     */
+    public int drainTo(final Collection<? super LoggingEvent> target) {
+        final List<LoggingEvent> drained = drain();
+        target.addAll(drained);
+        return drained.size();
+    }
+
+    /**
+     * Searches all the events logged on any of this factory's loggers by ANY thread.  When there are more events than the
+     * {@link #setParallelismThreshold(int) parallelism threshold} the search is split into ranges checked in parallel.
+     *
+     * @param predicate the condition to check each event against; must be thread safe
+     * @return the matching events, in the order they were logged
+     */
+    public ImmutableList<LoggingEvent> findAll(final Predicate<LoggingEvent> predicate) {
+        return ParallelSearch.findAll(allLoggingEvents.getLoggingEvents(), checkNotNull(predicate), parallelismThreshold);
+    }
+
+    /**
+     * As {@link #findAll(Predicate)}, but stops searching as soon as any matching event is found.
+     *
+     * @param predicate the condition to check each event against; must be thread safe
+     * @return true if any event logged on any of this factory's loggers by ANY thread matches
+     */
+    public boolean anyMatch(final Predicate<LoggingEvent> predicate) {
+        return ParallelSearch.anyMatch(allLoggingEvents.getLoggingEvents(), checkNotNull(predicate), parallelismThreshold);
+    }
+
+    /**
+     * @param parallelismThreshold the largest number of events {@link #findAll(Predicate)} and {@link #anyMatch(Predicate)}
+     *                             check sequentially on one thread
+     */
+    public void setParallelismThreshold(final int parallelismThreshold) {
+        checkArgument(parallelismThreshold > 0, "parallelismThreshold must be positive, was %s", parallelismThreshold);
+        this.parallelismThreshold = parallelismThreshold;
+    }
+
+    public int getParallelismThreshold() {
+        return parallelismThreshold;
+    }
+
+    /**
+     * The estimate covers the events as returned by {@link #getAllLoggingEventsFromLoggers()}; as every logger's events
+     * are also held there, it approximates the heap retained by all captured events.
+     *
+     * @return a rough estimate of the heap retained by the events logged on any of this factory's loggers, in bytes
+     */
+    public long getEstimatedBytes() {
+        return allLoggingEvents.getEstimatedBytes();
+    }
+
+    /**
+     * @return a rough estimate of the heap retained by the events of each logger, in bytes, by logger name
+     */
+    public ImmutableMap<String, Long> getEstimatedBytesByLogger() {
+        final ImmutableMap.Builder<String, Long> estimates = ImmutableMap.builder();
+        for (final TestLogger logger: loggers.loggers()) {
+            estimates.put(logger.getName(), logger.getEstimatedBytes());
+        }
+        return estimates.build();
+    }
+
+    /**
+     * Limits the estimated heap retained by captured events, as returned by {@link #getEstimatedBytes()}.  Under
+     * {@link OverBudgetPolicy#FAIL} once the budget is exceeded each further logging call throws an IllegalStateException
+     * describing the loggers retaining most, without storing its event.  Under {@link OverBudgetPolicy#EVICT_OLDEST} the
+     * oldest events are discarded, by this factory and by their loggers, until three quarters of the budget is used.
+     *
+     * @param bytes the budget, in bytes
+     * @param policy what to do when the budget is exceeded
+     */
+    public void setMemoryBudget(final long bytes, final OverBudgetPolicy policy) {
+        checkArgument(bytes > 0, "bytes must be positive, was %s", bytes);
+        memoryBudget = new MemoryBudget(bytes, checkNotNull(policy));
+    }
+
+    public void removeMemoryBudget() {
+        memoryBudget = MemoryBudget.NONE;
+    }
+
+    void checkMemoryBudget() {
+        final MemoryBudget budget = memoryBudget;
+        if (budget.policy == OverBudgetPolicy.FAIL && allLoggingEvents.getEstimatedBytes() > budget.bytes) {
+            throw new IllegalStateException("Captured logging events are estimated to retain " + getEstimatedBytes()
+                    + " bytes, over the memory budget of " + budget.bytes + " bytes; largest loggers by estimated bytes: "
+                    + largestLoggers(5));
+        }
+    }
+
+    private void enforceMemoryBudget() {
+        final MemoryBudget budget = memoryBudget;
+        if (budget.policy == OverBudgetPolicy.EVICT_OLDEST && allLoggingEvents.getEstimatedBytes() > budget.bytes) {
+            synchronized (memoryBudgetLock) {
+                removeFromOtherStores(allLoggingEvents.evictOldestDownTo(budget.bytes / 4 * 3));
+            }
+        }
+    }
+
+    /**
+     * Removes the given events, already removed from the events logged on any of this factory's loggers, from the events
+     * logged by each thread and from those of the loggers they were logged on, so that they are no longer reachable.
+     */
+    /**
+     * Removes the given events, compared by identity, from the events logged on any of this factory's loggers, both by ANY
+     * thread and by each thread.
+     */
+    void removeLoggingEvents(final Set<LoggingEvent> events) {
+        allLoggingEvents.removeAll(events);
+        removeThreadLoggingEvents(events);
+    }
+
+    private void removeThreadLoggingEvents(final Set<LoggingEvent> events) {
+        synchronized (threadLoggingEvents) {
+            for (final LoggingEventStore threadEvents: threadLoggingEvents) {
+                threadEvents.removeAll(events);
+            }
+        }
+    }
+
+    private void removeFromOtherStores(final List<LoggingEvent> removed) {
+        if (removed.isEmpty()) {
+            return;
+        }
+        final Set<LoggingEvent> events = Sets.newIdentityHashSet();
+        events.addAll(removed);
+        removeThreadLoggingEvents(events);
+        final Set<TestLogger> loggedOn = Sets.newIdentityHashSet();
+        for (final LoggingEvent event: removed) {
+            loggedOn.add(event.getCreatingLogger());
+        }
+        for (final TestLogger logger: loggedOn) {
+            logger.removeLoggingEvents(events);
+        }
+    }
+
+    /**
+     * Sets a usage threshold of the given fraction of its maximum size on each heap memory pool, and calls
+     * {@link #shedLowPriorityEvents()} each time the JVM reports that a pool has crossed it.  Usage thresholds are global to
+     * the JVM, so this replaces any threshold already set on those pools.
+     *
+     * @param heapFraction the fraction of each pool's maximum size at which to shed events, greater than 0 and at most 1
+     */
+    public synchronized void enableHeapPressureShedding(final double heapFraction) {
+        disableHeapPressureShedding();
+        heapPressureMonitor = HeapPressureMonitor.start(this, heapFraction);
+    }
+
+    public synchronized void disableHeapPressureShedding() {
+        if (heapPressureMonitor != null) {
+            heapPressureMonitor.stop();
+            heapPressureMonitor = null;
+        }
+    }
+
+    public synchronized boolean isHeapPressureSheddingEnabled() {
+        return heapPressureMonitor != null;
+    }
+
+    /**
+     * Discards every TRACE and DEBUG event held by this factory and its loggers, for ANY thread, recording how many were
+     * discarded in {@link #getShedEventCounts()} and {@link #getShedEventCountsByLogger()}.  Called on heap pressure once
+     * {@link #enableHeapPressureShedding(double)} has been called, but may also be called directly.
+     *
+     * @return the number of events discarded from the events logged on any of this factory's loggers
+     */
+    public int shedLowPriorityEvents() {
+        synchronized (memoryBudgetLock) {
+            final List<LoggingEvent> shed = allLoggingEvents.removeLevels(LOW_PRIORITY_LEVELS);
+            synchronized (threadLoggingEvents) {
+                for (final LoggingEventStore threadEvents: threadLoggingEvents) {
+                    threadEvents.removeLevels(LOW_PRIORITY_LEVELS);
+                }
+            }
+            for (final TestLogger logger: loggers.loggers()) {
+                logger.removeLevels(LOW_PRIORITY_LEVELS);
+            }
+            for (final LoggingEvent event: shed) {
+                shedEventCounts.add(event.getLevel());
+                shedEventCountsByLogger.add(event.getCreatingLogger().getName());
+            }
+            return shed.size();
+        }
+    }
+
+    /**
+     * @return the number of events discarded by {@link #shedLowPriorityEvents()} since the factory was last reset, by level
+     */
+    public ImmutableMultiset<Level> getShedEventCounts() {
+        return ImmutableMultiset.copyOf(shedEventCounts);
+    }
+
+    /**
+     * @return the number of events discarded by {@link #shedLowPriorityEvents()} since the factory was last reset, by the
+     *         name of the logger they were logged on
+     */
+    public ImmutableMultiset<String> getShedEventCountsByLogger() {
+        return ImmutableMultiset.copyOf(shedEventCountsByLogger);
+    }
+
+    private String largestLoggers(final int count) {
+        final List<Map.Entry<String, Long>> estimates = new ArrayList<>(getEstimatedBytesByLogger().entrySet());
+        Collections.sort(estimates, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(final Map.Entry<String, Long> first, final Map.Entry<String, Long> second) {
+                return second.getValue().compareTo(first.getValue());
+            }
+        });
+        return estimates.subList(0, Math.min(count, estimates.size())).toString();
+    }
+
+    /**
+     * Captures each throwable logged from now on as a {@link ThrowableSnapshot} rather than the original, so that events
+     * do not keep the original's object graph reachable.
+     *
+     * @param maxStackFrames the number of stack frames to retain of each throwable
+     * @param maxCauses the number of causes to retain of each throwable
+     */
+    public void setThrowableSnapshots(final int maxStackFrames, final int maxCauses) {
+        checkArgument(maxStackFrames >= 0, "maxStackFrames must not be negative, was %s", maxStackFrames);
+        checkArgument(maxCauses >= 0, "maxCauses must not be negative, was %s", maxCauses);
+        throwableRetention = new ThrowableRetention(maxStackFrames, maxCauses);
+    }
+
+    /**
+     * Captures each throwable logged from now on as the original, the default.
+     */
+    public void retainLiveThrowables() {
+        throwableRetention = ThrowableRetention.LIVE;
+    }
+
+    /**
+     * @return a rough estimate of the heap saved, in bytes, by capturing throwables as snapshots since the factory was
+     *         last reset; it counts only the throwables' messages, stack traces, causes and suppressed throwables, not
+     *         anything else their fields reference
+     */
+    public long getEstimatedThrowableBytesSaved() {
+        return throwableBytesSaved.get();
+    }
+
+    Optional<Throwable> captureThrowable(final Optional<Throwable> throwable) {
+        final ThrowableRetention retention = throwableRetention;
+        if (retention == ThrowableRetention.LIVE || !throwable.isPresent()) {
+            return throwable;
+        }
+        final Throwable original = throwable.get();
+        final ThrowableSnapshot snapshot = ThrowableSnapshot.of(original, retention.maxStackFrames, retention.maxCauses);
+        throwableBytesSaved.addAndGet(HeapEstimates.throwable(original) - HeapEstimates.throwable(snapshot));
+        return Optional.<Throwable>of(snapshot);
+    }
+
+    /**
+     * Captures each argument logged from now on as the snapshot the given function makes of it, for instance one of those
+     * provided by {@link ArgumentSnapshots}, unless a function has been registered for its type via
+     * {@link #setArgumentSnapshot(Class, Function)}.  Snapshots stop events keeping large arguments reachable, and stop
+     * later changes to mutable arguments changing events already captured.  Null arguments are captured as they are.
+     *
+     * @param snapshot the function making the snapshot of each argument
+     */
+    public synchronized void setArgumentSnapshots(final Function<Object, ?> snapshot) {
+        argumentCapture = argumentCapture.withDefault(checkNotNull(snapshot));
+    }
+
+    /**
+     * Captures each argument of the given type logged from now on as the snapshot the given function makes of it.  Where
+     * an argument is an instance of more than one registered type, the function registered most recently is used.
+     *
+     * @param type the type of argument the function applies to, including subtypes
+     * @param snapshot the function making the snapshot of each argument of the type
+     * @param <T> the type of argument
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> void setArgumentSnapshot(final Class<T> type, final Function<? super T, ?> snapshot) {
+        argumentCapture = argumentCapture.with(checkNotNull(type), (Function<Object, ?>) checkNotNull(snapshot));
+    }
+
+    /**
+     * Captures each argument logged from now on as the original, the default, forgetting any snapshot functions.
+     */
+    public synchronized void retainLiveArguments() {
+        argumentCapture = ArgumentCapture.LIVE;
+    }
+
+    /**
+     * @return the instance of the message template or thread name shared by the events of this factory's loggers
+     */
+    String canonical(final String value) {
+        return dictionary.canonical(value);
+    }
+
+    Object[] captureArguments(final Object[] arguments) {
+        final ArgumentCapture capture = argumentCapture;
+        return capture.isLive() ? arguments : capture.capture(arguments);
+    }
+
+    /**
+     * Drops events logged more than the given duration ago, both from this factory and from each of its loggers for which
+     * no time to live has been set via {@link TestLogger#setTimeToLive(long, TimeUnit)}.  Expired events are dropped in
+     * bulk as events are logged and read, so no timer runs.
+     *
+     * @param duration how long events are retained for
+     * @param unit the unit of the duration
+     * @throws IllegalArgumentException if the duration is less than a millisecond
+     */
+    public void setTimeToLive(final long duration, final TimeUnit unit) {
+        timeToLive.set(duration, unit);
+    }
+
+    public void removeTimeToLive() {
+        timeToLive.unset();
+    }
+
+    TimeToLive getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Guards against code under test logging in a runaway loop.  Once more than maxEvents events, or more than
+     * maxEventsPerSecond events within one second, have been logged on any of this factory's loggers since the limits
+     * were set, the logging call that crossed the limit throws an IllegalStateException naming its logger, the message
+     * template and the rate, and every later event on any logger is counted but not captured.  Limits may also be set on
+     * individual loggers via {@link TestLogger#setEventLimits(long, int)}.
+     *
+     * @param maxEvents the maximum number of events to capture
+     * @param maxEventsPerSecond the maximum number of events to capture within any one second
+     */
+    public void setEventLimits(final long maxEvents, final int maxEventsPerSecond) {
+        circuitBreaker = new CircuitBreaker("TestLoggerFactory", maxEvents, maxEventsPerSecond);
+    }
+
+    public void removeEventLimits() {
+        circuitBreaker = CircuitBreaker.NONE;
+    }
+
+    /**
+     * @return true if the loggers of this factory have crossed one of the limits set by {@link #setEventLimits(long, int)},
+     *         so are only counting events
+     */
+    public boolean isCountingOnly() {
+        return circuitBreaker.isOpen();
+    }
+
+    /**
+     * @return the number of events not captured since the loggers of this factory crossed one of its limits
+     */
+    public long getUncapturedEventCount() {
+        return circuitBreaker.getUncapturedEventCount();
+    }
+
+    /**
+     * @return the diagnostic raised when the loggers of this factory crossed one of its limits, or absent if they have not
+     */
+    public Optional<String> getEventLimitDiagnostic() {
+        return circuitBreaker.getDiagnostic();
+    }
+
+    boolean admit(final String loggerName, final String format) {
+        return circuitBreaker.admit(loggerName, format);
+    }
+
+    /**
+     * @return a checkpoint from which to read the events logged on any of this factory's loggers by ANY thread afterwards
+     */
+    public Checkpoint checkpoint() {
+        return allLoggingEvents.checkpoint();
+    }
+
+    /**
+     * @param checkpoint a checkpoint previously returned by {@link #checkpoint()}
+     * @return the events logged on any of this factory's loggers by ANY thread since the checkpoint was taken, or since
+     *         the events were last cleared if that was later, without copying
+     */
+    public List<LoggingEvent> getAllLoggingEventsSince(final Checkpoint checkpoint) {
+        return allLoggingEvents.getLoggingEventsSince(checkpoint);
+    }
+
+    /**
+     * @param from a checkpoint previously returned by {@link #checkpoint()}
+     * @param to a checkpoint taken at the same time as or after from
+     * @return the events logged on any of this factory's loggers by ANY thread after the first checkpoint was taken and
+     *         before the second, or since the events were last cleared before the second if that was later, without
+     *         copying; only events still stored are returned, so none if the events have been cleared since the second
+     *         was taken
+     */
+    public List<LoggingEvent> getAllLoggingEventsBetween(final Checkpoint from, final Checkpoint to) {
+        return allLoggingEvents.getLoggingEventsBetween(from, to);
+    }
+
+    /**
+     * Waits until an event matching the predicate has been logged on any logger by ANY thread, returning immediately if one
+     * already has.  The waiting thread is woken by the logging thread as soon as a matching event is logged.
+     *
+     * @param predicate the condition the event must satisfy
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return the first matching event, or absent if none was logged before the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the predicate threw on an event; the exception is its cause
+     */
+    public Optional<LoggingEvent> awaitEvent(final Predicate<LoggingEvent> predicate, final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        return EventWaiter.awaitEvent(allLoggingEvents, predicate, timeout, unit);
+    }
+
+    /**
+     * Waits until at least count events matching the predicate have been logged on any logger by ANY thread, including any
+     * already logged.  The waiting thread is woken by the logging thread as soon as the count is reached.
+     *
+     * @param predicate the condition the events must satisfy
+     * @param count the number of matching events to wait for
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if the count was reached, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the predicate threw on an event; the exception is its cause
+     */
+    public boolean awaitCount(
+            final Predicate<LoggingEvent> predicate, final int count, final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        return EventWaiter.awaitCount(allLoggingEvents, predicate, count, timeout, unit);
+    }
+
+    /**
+     * @param expected the events expected to have been logged on any logger by ANY thread
+     * @return true if exactly the expected events, and no others, have been logged, in any order
+     */
+    public boolean containsExactlyInAnyOrder(final Iterable<LoggingEvent> expected) {
+        return LoggingEventsDifference.containsExactlyInAnyOrder(allLoggingEvents.getLoggingEvents(), expected);
+    }
+
+    /**
+     * @param expected the events expected to have been logged on any logger by ANY thread
+     * @return true if every expected event has been logged at least as many times as it is expected
+     */
+    public boolean containsAll(final Iterable<LoggingEvent> expected) {
+        return LoggingEventsDifference.containsAll(allLoggingEvents.getLoggingEvents(), expected);
+    }
+
+    /**
+     * @param unexpected events which should not have been logged on any logger by ANY thread
+     * @return true if none of the unexpected events have been logged
+     */
+    public boolean containsNone(final Iterable<LoggingEvent> unexpected) {
+        return LoggingEventsDifference.containsNone(allLoggingEvents.getLoggingEvents(), unexpected);
+    }
+
+    /**
+     * @param expected the events expected to have been logged on any logger by ANY thread
+     * @return the events missing from and unexpectedly present in all logged events, ignoring order
+     */
+    public LoggingEventsDifference differenceFrom(final Iterable<LoggingEvent> expected) {
+        return LoggingEventsDifference.between(expected, allLoggingEvents.getLoggingEvents());
     }
 
     void addLoggingEvent(final LoggingEvent event) {
         loggingEvents.get().add(event);
         allLoggingEvents.add(event);
+        publisher.publish(event);
+        expectations.check(event);
+        enforceMemoryBudget();
+    }
+
+    /**
+     * Configures the level of the named logger and of every logger below it in the dotted name hierarchy that has no nearer
+     * level configured: that level and those above it are enabled, and those below disabled.  {@link Logger#ROOT_LOGGER_NAME}
+     * configures every logger.  Levels set directly on a logger via {@link TestLogger#setEnabledLevels(Level...)} or
+     * {@link TestLogger#setEnabledLevelsForAllThreads(Level...)} take precedence.
+     *
+     * @param loggerName the name of the logger at the root of the hierarchy to configure
+     * @param level the lowest level to enable
+     */
+    public synchronized void setLevel(final String loggerName, final Level level) {
+        levelConfiguration = levelConfiguration.with(loggerName, level);
+    }
+
+    /**
+     * @param loggerName the name of a logger whose configured level should be removed, so that it inherits its ancestors'
+     */
+    public synchronized void removeLevel(final String loggerName) {
+        levelConfiguration = levelConfiguration.without(loggerName);
+    }
+
+    /**
+     * @return the levels configured via {@link #setLevel(String, Level)} or slf4jtest.properties, by logger name
+     */
+    public ImmutableMap<String, Level> getLevels() {
+        return levelConfiguration.getLevels();
+    }
+
+    synchronized void setLevels(final LevelConfiguration levels) {
+        initialLevels = levels;
+        levelConfiguration = levelConfiguration.replacedBy(levels);
+    }
+
+    private synchronized void resetLevels() {
+        levelConfiguration = levelConfiguration.replacedBy(initialLevels);
+    }
+
+    LevelConfiguration getLevelConfiguration() {
+        return levelConfiguration;
     }
 
     public void setPrintLevel(final Level printLevel) {
         this.printLevel = checkNotNull(printLevel);
     }
 
+    /**
+     * What {@link #setMemoryBudget(long, OverBudgetPolicy)} does when captured events exceed the budget.
+     */
+    public enum OverBudgetPolicy {
+        /** Fails each further logging call with a diagnostic. */
+        FAIL,
+        /** Discards the oldest events. */
+        EVICT_OLDEST
+    }
+
+    private static final class MemoryBudget {
+
+        private static final MemoryBudget NONE = new MemoryBudget(Long.MAX_VALUE, null);
+
+        private final long bytes;
+        private final OverBudgetPolicy policy;
+
+        MemoryBudget(final long bytes, final OverBudgetPolicy policy) {
+            this.bytes = bytes;
+            this.policy = policy;
+        }
+    }
+
+    private static final class ThrowableRetention {
+
+        private static final ThrowableRetention LIVE = new ThrowableRetention(Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+        private final int maxStackFrames;
+        private final int maxCauses;
+
+        ThrowableRetention(final int maxStackFrames, final int maxCauses) {
+            this.maxStackFrames = maxStackFrames;
+            this.maxCauses = maxCauses;
+        }
+    }
+
     @SuppressWarnings("PMD.AccessorClassGeneration")
     private static class TestLoggerFactoryMaker implements Callable<TestLoggerFactory> {
         @Override
         public TestLoggerFactory call() throws IOException {
+            final OverridableProperties properties = new OverridableProperties("slf4jtest");
+            final TestLoggerFactory testLoggerFactory;
             try {
-                final String level = new OverridableProperties("slf4jtest").getProperty("print.level", "OFF");
+                final String level = properties.getProperty("print.level", "OFF");
                 final Level printLevel = Level.valueOf(level);
-                return new TestLoggerFactory(printLevel);
+                testLoggerFactory = new TestLoggerFactory(printLevel);
             } catch (IllegalArgumentException e) {
                 throw new IllegalStateException("Invalid level name in property print.level of file slf4jtest.properties " +
                         "or System property slf4jtest.print.level", e);
             }
+            try {
+                final String levels = properties.getProperty("levels", "");
+                testLoggerFactory.setLevels(LevelConfiguration.parse(levels));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException("Invalid logger levels in property levels of file slf4jtest.properties " +
+                        "or System property slf4jtest.levels; expected comma separated name=LEVEL pairs", e);
+            }
+            return testLoggerFactory;
         }
     }
 }
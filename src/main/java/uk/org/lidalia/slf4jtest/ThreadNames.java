@@ -0,0 +1,24 @@
+package uk.org.lidalia.slf4jtest;
+
+/**
+ * Supplies the current thread's name as the same String instance for as long as the name is unchanged, so that the events
+ * a thread logs share one copy of it rather than each holding the copy {@link Thread#getName()} may return.
+ */
+final class ThreadNames {
+
+    private static final java.lang.ThreadLocal<String> CURRENT = new java.lang.ThreadLocal<>();
+
+    static String current() {
+        final String name = Thread.currentThread().getName();
+        final String shared = CURRENT.get();
+        if (name.equals(shared)) {
+            return shared;
+        }
+        CURRENT.set(name);
+        return name;
+    }
+
+    private ThreadNames() {
+        throw new UnsupportedOperationException("Not instantiable");
+    }
+}
@@ -0,0 +1,75 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * <p>
+ * A compact copy of a {@link Throwable} captured in place of the original when
+ * {@link TestLoggerFactory#setThrowableSnapshots(int, int)} has been called, so that a {@link LoggingEvent} does not keep
+ * the original's object graph - suppressed exceptions and whatever its fields reference - reachable.
+ * </p>
+ * <p>
+ * It keeps the original's class name, message, up to a given number of stack frames and up to a given number of causes,
+ * each itself a snapshot.  {@link #toString()} and {@link #printStackTrace()} therefore read as the original's would, bar
+ * the frames and causes dropped.  Being a different object, a snapshot is not equal to the original; assert on
+ * {@link #getClassName()} and {@link #getMessage()} instead.
+ * </p>
+ */
+public final class ThrowableSnapshot extends Throwable {
+
+    private static final long serialVersionUID = 1L;
+
+    static ThrowableSnapshot of(final Throwable throwable, final int maxStackFrames, final int maxCauses) {
+        return of(throwable, maxStackFrames, maxCauses, Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>()));
+    }
+
+    private static ThrowableSnapshot of(
+            final Throwable throwable, final int maxStackFrames, final int maxCauses, final Set<Throwable> seen) {
+        seen.add(throwable);
+        final Throwable cause = throwable.getCause();
+        final ThrowableSnapshot causeSnapshot = cause == null || maxCauses == 0 || seen.contains(cause)
+                ? null
+                : of(cause, maxStackFrames, maxCauses - 1, seen);
+        return new ThrowableSnapshot(throwable, maxStackFrames, causeSnapshot);
+    }
+
+    private final String className;
+    private final int omittedStackFrames;
+
+    private ThrowableSnapshot(final Throwable original, final int maxStackFrames, final ThrowableSnapshot cause) {
+        super(original.getMessage(), cause, false, true);
+        this.className = original.getClass().getName();
+        final StackTraceElement[] frames = original.getStackTrace();
+        final int retained = Math.min(maxStackFrames, frames.length);
+        this.omittedStackFrames = frames.length - retained;
+        setStackTrace(Arrays.copyOf(frames, retained));
+    }
+
+    /**
+     * @return the name of the class of the original throwable
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * @return the number of the original throwable's stack frames not retained
+     */
+    public int getOmittedStackFrames() {
+        return omittedStackFrames;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        final String message = getLocalizedMessage();
+        return message == null ? className : className + ": " + message;
+    }
+}
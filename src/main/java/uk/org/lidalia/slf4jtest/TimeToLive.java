@@ -0,0 +1,48 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * How long the {@link LoggingEventStore}s sharing it retain events for.  Unless set, it is inherited from its parent, if it
+ * has one, so that a {@link TestLogger} follows its {@link TestLoggerFactory} until configured otherwise.
+ */
+final class TimeToLive {
+
+    static final long FOREVER = Long.MAX_VALUE;
+    private static final long INHERITED = -1L;
+
+    private final TimeToLive parent;
+    private volatile long millis = INHERITED;
+
+    TimeToLive() {
+        this(null);
+    }
+
+    TimeToLive(final TimeToLive parent) {
+        this.parent = parent;
+    }
+
+    void set(final long duration, final TimeUnit unit) {
+        final long converted = checkNotNull(unit).toMillis(duration);
+        checkArgument(converted > 0, "duration must be at least a millisecond, was %s %s", duration, unit);
+        this.millis = converted;
+    }
+
+    void unset() {
+        this.millis = INHERITED;
+    }
+
+    /**
+     * @return the number of milliseconds events are retained for, or {@link #FOREVER}
+     */
+    long getMillis() {
+        final long configured = millis;
+        if (configured != INHERITED) {
+            return configured;
+        }
+        return parent == null ? FOREVER : parent.getMillis();
+    }
+}
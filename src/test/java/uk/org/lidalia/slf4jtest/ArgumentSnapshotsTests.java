@@ -0,0 +1,96 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ArgumentSnapshotsTests {
+
+    private final TestLoggerFactory loggerFactory = new TestLoggerFactory();
+    private final TestLogger logger = loggerFactory.getLogger("name1");
+
+    @Test
+    public void truncatedToStringKeepsSmallImmutablesAndTruncatesTheRest() {
+        Function<Object, Object> snapshot = ArgumentSnapshots.truncatedToString(5);
+
+        assertEquals(42, snapshot.apply(42));
+        assertEquals(TimeUnit.SECONDS, snapshot.apply(TimeUnit.SECONDS));
+        assertEquals("short", snapshot.apply("short"));
+        assertEquals("too l...", snapshot.apply("too long"));
+        assertEquals("[1, 2...", snapshot.apply(asList(1, 2, 3)));
+        assertEquals("[1]", snapshot.apply(asList(1)));
+    }
+
+    @Test
+    public void typeAndIdentityDoesNotCallToString() {
+        Object argument = new Object() {
+            @Override
+            public String toString() {
+                throw new AssertionError("toString called");
+            }
+        };
+
+        assertEquals(argument.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(argument)),
+                ArgumentSnapshots.typeAndIdentity().apply(argument));
+        assertEquals("string", ArgumentSnapshots.typeAndIdentity().apply("string"));
+    }
+
+    @Test
+    public void snapshotsAreTakenAtCaptureTime() {
+        loggerFactory.setArgumentSnapshots(ArgumentSnapshots.truncatedToString(100));
+        List<String> mutable = new ArrayList<>(asList("a"));
+
+        logger.info("list {}", mutable);
+        mutable.add("b");
+
+        LoggingEvent event = logger.getLoggingEvents().get(0);
+        assertEquals(ImmutableList.of("[a]"), event.getArguments());
+        assertEquals("list [a]", event.getFormattedMessage());
+    }
+
+    @Test
+    public void mostRecentlyRegisteredMatchingTypeWins() {
+        loggerFactory.setArgumentSnapshots(ArgumentSnapshots.typeAndIdentity());
+        loggerFactory.setArgumentSnapshot(Number.class, new Function<Number, Object>() {
+            @Override
+            public Object apply(final Number number) {
+                return "number " + number.longValue();
+            }
+        });
+        loggerFactory.setArgumentSnapshot(AtomicInteger.class, new Function<AtomicInteger, Object>() {
+            @Override
+            public Object apply(final AtomicInteger atomic) {
+                return "atomic " + atomic.get();
+            }
+        });
+        Object other = new Object();
+
+        logger.info("{} {} {}", new AtomicInteger(2), new AtomicLong(1), other);
+
+        assertEquals(asList("atomic 2", "number 1", ArgumentSnapshots.typeAndIdentity().apply(other)),
+                logger.getLoggingEvents().get(0).getArguments());
+    }
+
+    @Test
+    public void liveArgumentsAreRetainedByDefaultAndAfterReset() {
+        Object argument = new Object();
+        logger.info("{}", argument);
+        loggerFactory.setArgumentSnapshots(ArgumentSnapshots.typeAndIdentity());
+        loggerFactory.retainLiveArguments();
+        logger.info("{}", argument);
+
+        assertSame(argument, logger.getLoggingEvents().get(0).getArguments().get(0));
+        assertSame(argument, logger.getLoggingEvents().get(1).getArguments().get(0));
+    }
+}
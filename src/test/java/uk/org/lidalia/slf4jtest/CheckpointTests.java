@@ -0,0 +1,98 @@
+package uk.org.lidalia.slf4jtest;
+
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.collection.IsEmptyCollection.empty;
+import static org.junit.Assert.assertThat;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.info;
+
+public class CheckpointTests {
+
+    private final TestLoggerFactory loggerFactory = new TestLoggerFactory();
+    private final TestLogger logger = loggerFactory.getLogger("name1");
+
+    @Test
+    public void readsEventsSinceCheckpoint() {
+        logger.info("message1");
+        Checkpoint checkpoint = logger.checkpoint();
+        logger.info("message2");
+        loggerFactory.getLogger("name2").info("message3");
+
+        assertThat(checkpoint.getGeneration(), is(0L));
+        assertThat(checkpoint.getPosition(), is(1));
+        assertThat(logger.getAllLoggingEventsSince(checkpoint), is(asList(info("message2"))));
+        assertThat(loggerFactory.getAllLoggingEventsSince(loggerFactory.checkpoint()), is(empty()));
+    }
+
+    @Test
+    public void readsAllEventsSinceClearIfClearedAfterCheckpoint() {
+        logger.info("message1");
+        Checkpoint checkpoint = logger.checkpoint();
+        logger.info("message2");
+        logger.clearAll();
+        logger.info("message3");
+
+        assertThat(logger.getAllLoggingEventsSince(checkpoint), is(asList(info("message3"))));
+        assertThat(logger.checkpoint().getGeneration(), is(1L));
+    }
+
+    @Test
+    public void readsEventsBetweenCheckpoints() {
+        Checkpoint first = loggerFactory.checkpoint();
+        logger.info("message1");
+        logger.info("message2");
+        Checkpoint second = loggerFactory.checkpoint();
+        logger.info("message3");
+
+        assertThat(loggerFactory.getAllLoggingEventsBetween(first, second),
+                is(asList(info("message1"), info("message2"))));
+    }
+
+    @Test
+    public void eventsBetweenCheckpointsAreGoneOnceCleared() {
+        Checkpoint first = logger.checkpoint();
+        logger.info("message1");
+        Checkpoint second = logger.checkpoint();
+        logger.clearAll();
+        logger.info("message2");
+
+        assertThat(logger.getAllLoggingEventsBetween(first, second), is(empty()));
+    }
+
+    @Test
+    public void eventsBetweenCheckpointsLeaveOutDrainedEvents() {
+        Checkpoint first = logger.checkpoint();
+        logger.info("message1");
+        logger.drain();
+        logger.info("message2");
+        Checkpoint second = logger.checkpoint();
+
+        assertThat(logger.getAllLoggingEventsBetween(first, second), is(asList(info("message2"))));
+    }
+
+    @Test
+    public void eventsBetweenCheckpointsInDifferentGenerationsStartAtClear() {
+        logger.info("message1");
+        Checkpoint first = logger.checkpoint();
+        logger.info("message2");
+        logger.clearAll();
+        logger.info("message3");
+        Checkpoint second = logger.checkpoint();
+
+        assertThat(logger.getAllLoggingEventsBetween(first, second), is(asList(info("message3"))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkpointsMustBeInOrder() {
+        Checkpoint first = logger.checkpoint();
+        logger.info("message1");
+        logger.getAllLoggingEventsBetween(logger.checkpoint(), first);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkpointMustBeFromSameLogger() {
+        loggerFactory.getLogger("name2").getAllLoggingEventsSince(logger.checkpoint());
+    }
+}
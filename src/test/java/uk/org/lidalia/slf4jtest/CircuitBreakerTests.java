@@ -0,0 +1,150 @@
+package uk.org.lidalia.slf4jtest;
+
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.info;
+
+public class CircuitBreakerTests {
+
+    private final TestLoggerFactory loggerFactory = new TestLoggerFactory();
+    private final TestLogger logger = loggerFactory.getLogger("name1");
+
+    @After
+    public void resetTime() {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @Test
+    public void countLimitOpensLoggerAndOnlyCountsLaterEvents() {
+        logger.setEventLimits(2, Integer.MAX_VALUE);
+        logger.info("message {}", 1);
+        logger.info("message {}", 2);
+
+        try {
+            logger.info("message {}", 3);
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString("TestLogger name1 exceeded its limit of 2 events"));
+            assertThat(e.getMessage(), containsString("logger name1 was logging \"message {}\""));
+            assertEquals(Optional.of(e.getMessage()), logger.getEventLimitDiagnostic());
+        }
+        logger.info("message {}", 4);
+        logger.info("message {}", 5);
+
+        assertTrue(logger.isCountingOnly());
+        assertEquals(3, logger.getUncapturedEventCount());
+        assertEquals(asList(info("message {}", 1), info("message {}", 2)), logger.getAllLoggingEvents());
+        assertEquals(asList(info("message {}", 1), info("message {}", 2)), loggerFactory.getAllLoggingEventsFromLoggers());
+    }
+
+    @Test
+    public void rateLimitAppliesWithinOneSecond() {
+        logger.setEventLimits(Long.MAX_VALUE, 2);
+        DateTimeUtils.setCurrentMillisFixed(1000L);
+        logger.info("message1");
+        logger.info("message2");
+        DateTimeUtils.setCurrentMillisFixed(2000L);
+        logger.info("message3");
+        logger.info("message4");
+        DateTimeUtils.setCurrentMillisFixed(2500L);
+
+        try {
+            logger.info("message5");
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString("exceeded its limit of 2 events per second"));
+            assertThat(e.getMessage(), containsString("at 3 events in 500ms"));
+        }
+        assertThat(logger.getAllLoggingEvents().size(), is(4));
+    }
+
+    @Test
+    public void rateLimitAppliesToAnySecondNotJustFixedWindows() {
+        logger.setEventLimits(Long.MAX_VALUE, 2);
+        DateTimeUtils.setCurrentMillisFixed(1000L);
+        logger.info("message1");
+        DateTimeUtils.setCurrentMillisFixed(1900L);
+        logger.info("message2");
+        DateTimeUtils.setCurrentMillisFixed(2000L);
+        logger.info("message3");
+
+        try {
+            DateTimeUtils.setCurrentMillisFixed(2100L);
+            logger.info("message4");
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString("at 3 events in 200ms"));
+        }
+        assertThat(logger.getAllLoggingEvents().size(), is(3));
+    }
+
+    @Test
+    public void factoryLimitsApplyAcrossLoggers() {
+        TestLogger logger2 = loggerFactory.getLogger("name2");
+        loggerFactory.setEventLimits(2, Integer.MAX_VALUE);
+        logger.info("message1");
+        logger2.info("message2");
+
+        try {
+            logger2.info("message3");
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString("TestLoggerFactory exceeded its limit of 2 events"));
+            assertThat(e.getMessage(), containsString("logger name2 was logging \"message3\""));
+        }
+        logger.info("message4");
+
+        assertTrue(loggerFactory.isCountingOnly());
+        assertFalse(logger.isCountingOnly());
+        assertEquals(2, loggerFactory.getUncapturedEventCount());
+        assertEquals(asList(info("message1")), logger.getAllLoggingEvents());
+    }
+
+    @Test
+    public void removingLimitsClosesBreaker() {
+        logger.setEventLimits(1, Integer.MAX_VALUE);
+        logger.info("message1");
+        try {
+            logger.info("message2");
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+
+        logger.removeEventLimits();
+        logger.info("message3");
+
+        assertFalse(logger.isCountingOnly());
+        assertEquals(Optional.<String>absent(), logger.getEventLimitDiagnostic());
+        assertEquals(asList(info("message1"), info("message3")), logger.getAllLoggingEvents());
+    }
+
+    @Test
+    public void resetRemovesFactoryLimits() {
+        loggerFactory.setEventLimits(1, 1);
+        loggerFactory.doReset();
+
+        TestLogger logger2 = loggerFactory.getLogger("name2");
+        logger2.info("message1");
+        logger2.info("message2");
+
+        assertFalse(loggerFactory.isCountingOnly());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void limitsMustBePositive() {
+        logger.setEventLimits(0, 1);
+    }
+}
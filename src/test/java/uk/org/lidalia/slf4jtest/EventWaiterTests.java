@@ -0,0 +1,129 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+
+import uk.org.lidalia.slf4jext.Level;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.error;
+
+public class EventWaiterTests {
+
+    private final TestLoggerFactory loggerFactory = new TestLoggerFactory();
+    private final Predicate<LoggingEvent> isError = new Predicate<LoggingEvent>() {
+        @Override
+        public boolean apply(final LoggingEvent event) {
+            return event.getLevel() == Level.ERROR;
+        }
+    };
+
+    @Test
+    public void awaitEventReturnsImmediatelyIfAlreadyLogged() throws InterruptedException {
+        loggerFactory.getLogger("name1").info("ignored");
+        loggerFactory.getLogger("name1").error("first");
+        loggerFactory.getLogger("name1").error("second");
+
+        assertThat(loggerFactory.awaitEvent(isError, 0, TimeUnit.MILLISECONDS), is(Optional.of(error("first"))));
+    }
+
+    @Test
+    public void awaitEventIsWokenByEventLoggedOnAnotherThread() throws InterruptedException {
+        final TestLogger logger = loggerFactory.getLogger("name1");
+        final CountDownLatch started = new CountDownLatch(1);
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    started.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                logger.info("ignored");
+                logger.error("expected");
+            }
+        };
+        thread.start();
+        started.countDown();
+
+        assertThat(logger.awaitEvent(isError, 10, TimeUnit.SECONDS), is(Optional.of(error("expected"))));
+        thread.join();
+    }
+
+    @Test
+    public void awaitEventTimesOut() throws InterruptedException {
+        loggerFactory.getLogger("name1").info("ignored");
+
+        assertThat(loggerFactory.awaitEvent(isError, 10, TimeUnit.MILLISECONDS), is(Optional.<LoggingEvent>absent()));
+    }
+
+    @Test
+    public void awaitCountIncludesEventsAlreadyLogged() throws InterruptedException {
+        final TestLogger logger = loggerFactory.getLogger("name1");
+        logger.error("first");
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                logger.error("second");
+                logger.error("third");
+            }
+        };
+        thread.start();
+
+        assertThat(logger.awaitCount(isError, 3, 10, TimeUnit.SECONDS), is(true));
+        thread.join();
+    }
+
+    @Test
+    public void awaitCountTimesOutIfTooFewMatch() throws InterruptedException {
+        loggerFactory.getLogger("name1").error("first");
+
+        assertThat(loggerFactory.awaitCount(isError, 2, 10, TimeUnit.MILLISECONDS), is(false));
+    }
+
+    @Test
+    public void awaitCountOfZeroIsImmediatelySatisfied() throws InterruptedException {
+        assertThat(loggerFactory.awaitCount(isError, 0, 0, TimeUnit.MILLISECONDS), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void awaitCountRejectsNegativeCount() throws InterruptedException {
+        loggerFactory.awaitCount(isError, -1, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void throwingPredicateFailsTheWaiterNotTheLoggingCall() throws InterruptedException {
+        final TestLogger logger = loggerFactory.getLogger("name1");
+        final IllegalArgumentException cause = new IllegalArgumentException("bad predicate");
+        final Predicate<LoggingEvent> throwing = new Predicate<LoggingEvent>() {
+            @Override
+            public boolean apply(final LoggingEvent event) {
+                throw cause;
+            }
+        };
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                logger.info("throws");
+            }
+        };
+        thread.start();
+
+        try {
+            logger.awaitEvent(throwing, 10, TimeUnit.SECONDS);
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(e.getCause(), is(sameInstance((Throwable) cause)));
+        }
+        thread.join();
+        assertThat(logger.getAllLoggingEvents().size(), is(1));
+    }
+}
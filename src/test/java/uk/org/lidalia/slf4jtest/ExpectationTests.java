@@ -0,0 +1,137 @@
+package uk.org.lidalia.slf4jtest;
+
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+
+import uk.org.lidalia.slf4jext.Level;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.error;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.info;
+
+public class ExpectationTests {
+
+    private final TestLoggerFactory loggerFactory = new TestLoggerFactory();
+    private final TestLogger logger = loggerFactory.getLogger("name1");
+    private final Predicate<LoggingEvent> isError = new Predicate<LoggingEvent>() {
+        @Override
+        public boolean apply(final LoggingEvent event) {
+            return event.getLevel() == Level.ERROR;
+        }
+
+        @Override
+        public String toString() {
+            return "any error";
+        }
+    };
+
+    @Test
+    public void expectationIsMetByLaterEvent() {
+        Expectation expectation = loggerFactory.expect(info("message1"));
+        assertThat(expectation.isSatisfied(), is(false));
+
+        logger.info("message1");
+        logger.info("message1");
+
+        assertThat(expectation.isSatisfied(), is(true));
+        assertThat(expectation.getFirstMatch(), is(Optional.of(info("message1"))));
+        loggerFactory.verifyExpectations();
+    }
+
+    @Test
+    public void expectationIsNotMetByEarlierEvent() {
+        logger.info("message1");
+
+        Expectation expectation = loggerFactory.expect(info("message1"));
+
+        assertThat(expectation.isSatisfied(), is(false));
+    }
+
+    @Test
+    public void verifyReportsUnmetExpectations() {
+        loggerFactory.expect(info("message1"));
+        loggerFactory.expect(info("message2"));
+        logger.info("message2");
+
+        try {
+            loggerFactory.verifyExpectations();
+            fail("expected AssertionError");
+        } catch (AssertionError error) {
+            assertThat(error.getMessage(), containsString("message1"));
+        }
+    }
+
+    @Test
+    public void forbiddenEventFailsFast() {
+        Expectation expectation = loggerFactory.forbid(isError);
+        logger.info("allowed");
+
+        try {
+            logger.error("boom");
+            fail("expected AssertionError");
+        } catch (AssertionError error) {
+            assertThat(error.getMessage(), containsString("boom"));
+        }
+        assertThat(expectation.isSatisfied(), is(false));
+        assertThat(expectation.getFirstMatch(), is(Optional.of(error("boom"))));
+        assertThat(logger.getAllLoggingEvents().size(), is(2));
+    }
+
+    @Test
+    public void verifyReportsForbiddenEventEvenIfFailureWasSwallowed() {
+        loggerFactory.forbid(isError);
+        try {
+            logger.error("boom");
+        } catch (AssertionError swallowed) {
+            // as code under test might
+        }
+
+        try {
+            loggerFactory.verifyExpectations();
+            fail("expected AssertionError");
+        } catch (AssertionError error) {
+            assertThat(error.getMessage(), containsString("forbidden any error"));
+        }
+    }
+
+    @Test
+    public void clearRemovesExpectations() {
+        loggerFactory.expect(info("message1"));
+        loggerFactory.forbid(isError);
+
+        loggerFactory.clearExpectations();
+        logger.error("boom");
+
+        loggerFactory.verifyExpectations();
+    }
+
+    @Test
+    public void throwingPredicateFailsTheExpectationNotTheLoggingCall() {
+        final IllegalArgumentException cause = new IllegalArgumentException("bad predicate");
+        Expectation expectation = loggerFactory.expect(new Predicate<LoggingEvent>() {
+            @Override
+            public boolean apply(final LoggingEvent event) {
+                throw cause;
+            }
+        });
+        Expectation other = loggerFactory.expect(info("message1"));
+
+        logger.info("message1");
+        logger.info("message2");
+
+        assertThat(other.isSatisfied(), is(true));
+        assertThat(expectation.isSatisfied(), is(false));
+        assertThat(expectation.getFailure(), is(Optional.<RuntimeException>of(cause)));
+        try {
+            loggerFactory.verifyExpectations();
+            fail("expected AssertionError");
+        } catch (AssertionError error) {
+            assertThat(error.getCause(), is((Throwable) cause));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMultiset;
+
+import uk.org.lidalia.slf4jext.Level;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.info;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.warn;
+
+public class HeapPressureSheddingTests {
+
+    private final TestLoggerFactory loggerFactory = new TestLoggerFactory();
+
+    @After
+    public void disableShedding() {
+        loggerFactory.disableHeapPressureShedding();
+    }
+
+    @Test
+    public void shedsTraceAndDebugEventsFromFactoryAndLoggers() {
+        TestLogger logger1 = loggerFactory.getLogger("name1");
+        TestLogger logger2 = loggerFactory.getLogger("name2");
+        logger1.trace("trace1");
+        logger1.info("info1");
+        logger2.debug("debug2");
+        logger2.debug("debug2 again");
+        logger2.warn("warn2");
+
+        assertEquals(3, loggerFactory.shedLowPriorityEvents());
+
+        assertEquals(asList(info("info1"), warn("warn2")), loggerFactory.getAllLoggingEventsFromLoggers());
+        assertEquals(asList(info("info1"), warn("warn2")), loggerFactory.getLoggingEventsFromLoggers());
+        assertEquals(asList(info("info1")), logger1.getAllLoggingEvents());
+        assertEquals(asList(info("info1")), logger1.getLoggingEvents());
+        assertEquals(asList(warn("warn2")), logger2.getAllLoggingEvents());
+        assertEquals(asList(warn("warn2")), logger2.getLoggingEvents());
+        assertEquals(ImmutableMultiset.builder().add(Level.TRACE).addCopies(Level.DEBUG, 2).build(),
+                loggerFactory.getShedEventCounts());
+        assertEquals(ImmutableMultiset.builder().add("name1").addCopies("name2", 2).build(),
+                loggerFactory.getShedEventCountsByLogger());
+    }
+
+    @Test
+    public void shedsFromEventsLoggedOnOtherThreads() throws InterruptedException {
+        final TestLogger logger = loggerFactory.getLogger("name1");
+        final List<LoggingEvent> loggerEvents = new ArrayList<>();
+        final List<LoggingEvent> factoryEvents = new ArrayList<>();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                logger.debug("debug");
+                logger.info("info");
+                loggerFactory.shedLowPriorityEvents();
+                loggerEvents.addAll(logger.getLoggingEvents());
+                factoryEvents.addAll(loggerFactory.getLoggingEventsFromLoggers());
+            }
+        };
+        thread.start();
+        thread.join();
+
+        assertEquals(asList(info("info")), loggerEvents);
+        assertEquals(asList(info("info")), factoryEvents);
+        assertEquals(asList(info("info")), logger.getAllLoggingEvents());
+    }
+
+    @Test
+    public void shedCountsAccumulateUntilReset() {
+        TestLogger logger = loggerFactory.getLogger("name1");
+        logger.debug("debug1");
+        loggerFactory.shedLowPriorityEvents();
+        logger.debug("debug2");
+        loggerFactory.shedLowPriorityEvents();
+
+        assertEquals(2, loggerFactory.getShedEventCounts().count(Level.DEBUG));
+
+        loggerFactory.doReset();
+
+        assertTrue(loggerFactory.getShedEventCounts().isEmpty());
+        assertTrue(loggerFactory.getShedEventCountsByLogger().isEmpty());
+    }
+
+    @Test
+    public void enablingSetsUsageThresholdsOnHeapPoolsAndDisablingClearsThem() {
+        loggerFactory.enableHeapPressureShedding(0.99);
+
+        assertTrue(loggerFactory.isHeapPressureSheddingEnabled());
+        for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported() && pool.getUsage().getMax() > 0) {
+                assertEquals((long) (pool.getUsage().getMax() * 0.99), pool.getUsageThreshold());
+            }
+        }
+
+        loggerFactory.disableHeapPressureShedding();
+
+        assertFalse(loggerFactory.isHeapPressureSheddingEnabled());
+        for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported()) {
+                assertEquals(0, pool.getUsageThreshold());
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void heapFractionMustBeAFraction() {
+        loggerFactory.enableHeapPressureShedding(1.5);
+    }
+}
@@ -0,0 +1,46 @@
+package uk.org.lidalia.slf4jtest;
+
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+
+import uk.org.lidalia.slf4jext.Level;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LevelConfigurationTests {
+
+    @Test
+    public void parsesEmptySpecification() {
+        assertThat(LevelConfiguration.parse("").getLevels(), is(ImmutableMap.<String, Level>of()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMalformedSpecification() {
+        LevelConfiguration.parse("com.acme");
+    }
+
+    @Test
+    public void resolvesNearestConfiguredAncestor() {
+        LevelConfiguration configuration = LevelConfiguration.parse("com.acme=INFO,com.acme.db=DEBUG");
+
+        assertThat(configuration.levelFor("com.acme.db.Pool"), is(Optional.of(Level.DEBUG)));
+        assertThat(configuration.levelFor("com.acme.dbx"), is(Optional.of(Level.INFO)));
+        assertThat(configuration.levelFor("com.acme"), is(Optional.of(Level.INFO)));
+        assertThat(configuration.levelFor("com"), is(Optional.<Level>absent()));
+    }
+
+    @Test
+    public void rootAppliesToAllLoggers() {
+        assertThat(LevelConfiguration.parse("ROOT=WARN").levelFor("com.acme"), is(Optional.of(Level.WARN)));
+    }
+
+    @Test
+    public void eachChangeIncrementsVersion() {
+        LevelConfiguration configuration = LevelConfiguration.EMPTY.with("com.acme", Level.INFO);
+        assertThat(configuration.getVersion(), is(1L));
+        assertThat(configuration.without("com.acme").getVersion(), is(2L));
+    }
+}
@@ -0,0 +1,93 @@
+package uk.org.lidalia.slf4jtest;
+
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.collection.IsEmptyCollection.empty;
+import static org.junit.Assert.assertThat;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.info;
+
+public class LoggerNameTrieTests {
+
+    private final TestLoggerFactory loggerFactory = new TestLoggerFactory();
+
+    @Test
+    public void findsLoggerAndDescendantsOnly() {
+        TestLogger payments = loggerFactory.getLogger("com.acme.payments");
+        TestLogger cards = loggerFactory.getLogger("com.acme.payments.cards");
+        loggerFactory.getLogger("com.acme.paymentsx");
+        loggerFactory.getLogger("com.acme.orders");
+
+        assertThat(loggerFactory.getLoggersUnder("com.acme.payments").values().asList(), is(asList(payments, cards)));
+        assertThat(loggerFactory.getLoggersUnder("com.acme").size(), is(4));
+        assertThat(loggerFactory.getLoggersUnder("").size(), is(4));
+        assertThat(loggerFactory.getLoggersUnder("org").isEmpty(), is(true));
+    }
+
+    @Test
+    public void mergesEventsOfSubtreeByTimestamp() {
+        DateTimeUtils.setCurrentMillisFixed(1000L);
+        loggerFactory.getLogger("com.acme.payments.cards").info("message1");
+        DateTimeUtils.setCurrentMillisFixed(2000L);
+        loggerFactory.getLogger("com.acme.orders").info("ignored");
+        loggerFactory.getLogger("com.acme.payments").info("message2");
+        DateTimeUtils.setCurrentMillisFixed(3000L);
+        loggerFactory.getLogger("com.acme.payments.cards").info("message3");
+
+        assertThat(loggerFactory.getAllLoggingEventsUnder("com.acme.payments"),
+                is(asList(info("message1"), info("message2"), info("message3"))));
+        assertThat(loggerFactory.getAllLoggingEventsUnder("com.acme.refunds"), is(empty()));
+    }
+
+    @Test
+    public void ordersEventsWithTheSameTimestampByLoggerName() {
+        DateTimeUtils.setCurrentMillisFixed(1000L);
+        loggerFactory.getLogger("com.acme.b.c").info("message1");
+        loggerFactory.getLogger("com.acme.b-x").info("message2");
+        loggerFactory.getLogger("com.acme.b").info("message3");
+
+        assertThat(loggerFactory.getAllLoggingEventsUnder("com.acme"),
+                is(asList(info("message3"), info("message2"), info("message1"))));
+        assertThat(loggerFactory.getAllLoggingEventsUnder("com.acme.b-x"), is(asList(info("message2"))));
+    }
+
+    @Test
+    public void removingNamesPrunesNodesLeftEmpty() {
+        LoggerNameTrie trie = new LoggerNameTrie();
+        trie.add("com.acme.payments");
+        int baseline = trie.nodeCount();
+
+        for (int i = 0; i < 100; i++) {
+            trie.add("com.acme.payments.request" + i + ".handler");
+            trie.add("com.acme.tenant" + i);
+        }
+        trie.add("com.acme.payments.request0");
+        trie.remove("com.acme.payments.request0");
+        for (int i = 0; i < 100; i++) {
+            trie.remove("com.acme.payments.request" + i + ".handler");
+            trie.remove("com.acme.tenant" + i);
+        }
+
+        assertThat(trie.nodeCount(), is(baseline));
+        assertThat(trie.namesUnder(""), is(asList("com.acme.payments")));
+        trie.remove("com.acme.payments");
+        assertThat(trie.nodeCount(), is(0));
+    }
+
+    @Test
+    public void resetClearsTrie() {
+        loggerFactory.getLogger("com.acme.payments");
+
+        loggerFactory.doReset();
+
+        assertThat(loggerFactory.getLoggersUnder("com").isEmpty(), is(true));
+    }
+
+    @After
+    public void resetTime() {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+}
@@ -0,0 +1,59 @@
+package uk.org.lidalia.slf4jtest;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class LoggerRegistryTests {
+
+    private final TestLoggerFactory loggerFactory = new TestLoggerFactory();
+
+    @Test
+    public void loggersAreKeptByDefault() throws InterruptedException {
+        createUnreferencedLoggers(100);
+
+        collectGarbage();
+
+        assertThat(loggerFactory.getLoggerCount(), is(100));
+        assertThat(loggerFactory.getEvictedLoggerCount(), is(0L));
+    }
+
+    @Test
+    public void unreferencedLoggersWithoutEventsAreEvicted() throws InterruptedException {
+        loggerFactory.enableLoggerEviction();
+        TestLogger referenced = loggerFactory.getLogger("referenced");
+        loggerFactory.getLogger("withEvents").info("retained");
+        createUnreferencedLoggers(100);
+
+        for (int attempt = 0; attempt < 50 && loggerFactory.getLoggerCount() > 2; attempt++) {
+            collectGarbage();
+        }
+
+        assertThat(loggerFactory.getLoggerCount(), is(2));
+        assertThat(loggerFactory.getEvictedLoggerCount(), is(100L));
+        assertThat(loggerFactory.getLogger("referenced"), is(sameInstance(referenced)));
+        assertThat(loggerFactory.getLoggersUnder("tenant").isEmpty(), is(true));
+    }
+
+    @Test
+    public void evictedLoggerIsRecreatedOnRequest() {
+        loggerFactory.enableLoggerEviction();
+        TestLogger logger = loggerFactory.getLogger("tenant.1");
+
+        assertThat(loggerFactory.getLogger("tenant.1"), is(sameInstance(logger)));
+        assertThat(loggerFactory.getLoggersUnder("tenant").size(), is(1));
+    }
+
+    private void createUnreferencedLoggers(final int count) {
+        for (int i = 0; i < count; i++) {
+            loggerFactory.getLogger("tenant." + i);
+        }
+    }
+
+    private static void collectGarbage() throws InterruptedException {
+        System.gc();
+        Thread.sleep(10);
+    }
+}
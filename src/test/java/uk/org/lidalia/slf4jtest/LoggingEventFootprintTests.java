@@ -0,0 +1,155 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.ReadableInstant;
+import org.junit.Test;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeTrue;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.info;
+
+/**
+ * Pins the layout of a {@link LoggingEvent}, so that a change adding to the cost of every captured event is deliberate.
+ * The size its declared fields add up to, as a 64 bit JVM with compressed references lays them out, is pinned, and checked
+ * together with {@link HeapEstimates} against the heap that holding many events actually retains on such a JVM.
+ */
+public class LoggingEventFootprintTests {
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int REFERENCE = 4;
+    private static final int EVENTS_MEASURED = 200000;
+    private static final double TOLERANCE = 4;
+
+    @Test
+    public void declaredFieldLayoutIsPinned() {
+        assertEquals(56, declaredFieldSize(LoggingEvent.class));
+    }
+
+    @Test
+    public void heapRetainedByMinimalEventsMatchesTheDeclaredLayoutAndEstimate() {
+        assumeCompressedReferences();
+
+        double measured = measuredBytesPerEvent(new Function<Integer, LoggingEvent>() {
+            @Override
+            public LoggingEvent apply(final Integer index) {
+                return info("message");
+            }
+        });
+
+        assertEquals(declaredFieldSize(LoggingEvent.class), measured, TOLERANCE);
+        assertEquals(HeapEstimates.loggingEvent(info("message")) - HeapEstimates.string("message"), measured, TOLERANCE);
+    }
+
+    @Test
+    public void heapRetainedByEventsWithTheirOwnMessagesMatchesTheEstimate() throws NoSuchFieldException {
+        assumeCompressedReferences();
+        assumeTrue("strings are not held as UTF-16 char arrays",
+                String.class.getDeclaredField("value").getType() == char[].class);
+        final char[] message = "message".toCharArray();
+
+        double measured = measuredBytesPerEvent(new Function<Integer, LoggingEvent>() {
+            @Override
+            public LoggingEvent apply(final Integer index) {
+                return info(new String(message));
+            }
+        });
+
+        assertEquals(HeapEstimates.loggingEvent(info("message")), measured, TOLERANCE);
+    }
+
+    @Test
+    public void noFieldWrapsAnOptionalValueOrTimestamp() {
+        for (Field field: instanceFields(LoggingEvent.class)) {
+            assertFalse(field.toString(), Optional.class.isAssignableFrom(field.getType()));
+            assertFalse(field.toString(), ReadableInstant.class.isAssignableFrom(field.getType()));
+        }
+    }
+
+    @Test
+    public void eventsLoggedByOneThreadShareItsName() {
+        assertSame(info("message1").getThreadName(), info("message2").getThreadName());
+    }
+
+    private static void assumeCompressedReferences() {
+        HotSpotDiagnosticMXBean hotSpot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+        assumeTrue("not a HotSpot JVM", hotSpot != null);
+        assumeTrue("references are not compressed", Boolean.parseBoolean(hotSpot.getVMOption("UseCompressedOops").getValue()));
+    }
+
+    /**
+     * @return the growth in the heap in use after a full collection from holding many events, divided by their number
+     */
+    private static double measuredBytesPerEvent(final Function<Integer, LoggingEvent> create) {
+        final LoggingEvent[] held = new LoggingEvent[EVENTS_MEASURED];
+        final long before = usedHeapAfterCollection();
+        for (int index = 0; index < held.length; index++) {
+            held[index] = create.apply(index);
+        }
+        final long after = usedHeapAfterCollection();
+        assertEquals(EVENTS_MEASURED, countHeld(held));
+        return (after - before) / (double) EVENTS_MEASURED;
+    }
+
+    private static long usedHeapAfterCollection() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int collection = 0; collection < 3; collection++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static int countHeld(final LoggingEvent[] held) {
+        int count = 0;
+        for (LoggingEvent event: held) {
+            if (event != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long declaredFieldSize(final Class<?> type) {
+        long bytes = OBJECT_HEADER;
+        for (Field field: instanceFields(type)) {
+            bytes += sizeOf(field.getType());
+        }
+        return (bytes + 7) & ~7L;
+    }
+
+    private static Iterable<Field> instanceFields(final Class<?> type) {
+        final List<Field> fields = new ArrayList<>();
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            for (Field field: current.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    fields.add(field);
+                }
+            }
+        }
+        return fields;
+    }
+
+    private static int sizeOf(final Class<?> fieldType) {
+        if (fieldType == long.class || fieldType == double.class) {
+            return 8;
+        } else if (fieldType == int.class || fieldType == float.class) {
+            return 4;
+        } else if (fieldType == short.class || fieldType == char.class) {
+            return 2;
+        } else if (fieldType == byte.class || fieldType == boolean.class) {
+            return 1;
+        } else {
+            return REFERENCE;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import uk.org.lidalia.slf4jtest.LoggingEventPublisher.OverflowPolicy;
+import uk.org.lidalia.slf4jtest.LoggingEventPublisher.Subscription;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.collection.IsEmptyCollection.empty;
+import static org.junit.Assert.assertThat;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.info;
+
+public class LoggingEventPublisherTests {
+
+    private final TestLoggerFactory loggerFactory = new TestLoggerFactory();
+    private final TestLogger logger = loggerFactory.getLogger("name1");
+
+    @Test
+    public void deliversOnlyRequestedEvents() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        Subscription subscription = logger.getPublisher().subscribe(subscriber);
+        logger.info("message1");
+        logger.info("message2");
+
+        assertThat(subscriber.events, is(empty()));
+
+        subscription.request(1);
+        assertThat(subscriber.events, is(asList(info("message1"))));
+
+        subscription.request(5);
+        logger.info("message3");
+        assertThat(subscriber.events, is(asList(info("message1"), info("message2"), info("message3"))));
+    }
+
+    @Test
+    public void factoryPublishesEventsFromAllLoggers() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        loggerFactory.getPublisher().subscribe(subscriber).request(Long.MAX_VALUE);
+        logger.info("message1");
+        loggerFactory.getLogger("name2").info("message2");
+
+        assertThat(subscriber.events, is(asList(info("message1"), info("message2"))));
+    }
+
+    @Test
+    public void dropOldestKeepsMostRecentEvents() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        Subscription subscription = logger.getPublisher().subscribe(subscriber, 2, OverflowPolicy.DROP_OLDEST);
+        logger.info("message1");
+        logger.info("message2");
+        logger.info("message3");
+        subscription.request(10);
+
+        assertThat(subscriber.events, is(asList(info("message2"), info("message3"))));
+        assertThat(subscription.getDroppedCount(), is(1L));
+    }
+
+    @Test
+    public void dropNewestKeepsEarliestEvents() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        Subscription subscription = logger.getPublisher().subscribe(subscriber, 2, OverflowPolicy.DROP_NEWEST);
+        logger.info("message1");
+        logger.info("message2");
+        logger.info("message3");
+        subscription.request(10);
+
+        assertThat(subscriber.events, is(asList(info("message1"), info("message2"))));
+        assertThat(subscription.getDroppedCount(), is(1L));
+    }
+
+    @Test
+    public void failSignalsErrorAndCancels() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        logger.getPublisher().subscribe(subscriber, 1, OverflowPolicy.FAIL);
+        logger.info("message1");
+        logger.info("message2");
+
+        assertThat(subscriber.error, instanceOf(IllegalStateException.class));
+        assertThat(logger.getPublisher().getSubscriberCount(), is(0));
+    }
+
+    @Test
+    public void nonPositiveRequestSignalsError() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        logger.getPublisher().subscribe(subscriber).request(0);
+
+        assertThat(subscriber.error, instanceOf(IllegalArgumentException.class));
+    }
+
+    @Test
+    public void cancelledSubscriberReceivesNoMoreEvents() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        Subscription subscription = logger.getPublisher().subscribe(subscriber);
+        subscription.request(Long.MAX_VALUE);
+        subscription.cancel();
+        logger.info("message1");
+
+        assertThat(subscriber.events, is(empty()));
+        assertThat(subscriber.error, is(nullValue()));
+        assertThat(logger.getPublisher().getSubscriberCount(), is(0));
+    }
+
+    @Test
+    public void subscriberMayRequestFromOnNext() {
+        RecordingSubscriber subscriber = new RecordingSubscriber() {
+            @Override
+            public void onNext(final LoggingEvent event) {
+                super.onNext(event);
+                subscription.request(1);
+            }
+        };
+        logger.getPublisher().subscribe(subscriber).request(1);
+        logger.info("message1");
+        logger.info("message2");
+
+        assertThat(subscriber.events, is(asList(info("message1"), info("message2"))));
+    }
+
+    @Test
+    public void resetCancelsFactorySubscriptions() {
+        loggerFactory.getPublisher().subscribe(new RecordingSubscriber());
+
+        loggerFactory.doReset();
+
+        assertThat(loggerFactory.getPublisher().getSubscriberCount(), is(0));
+    }
+
+    private static class RecordingSubscriber implements LoggingEventPublisher.Subscriber {
+
+        final List<LoggingEvent> events = new ArrayList<>();
+        Subscription subscription;
+        Throwable error;
+
+        @Override
+        public void onSubscribe(final Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(final LoggingEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            this.error = throwable;
+        }
+    }
+}
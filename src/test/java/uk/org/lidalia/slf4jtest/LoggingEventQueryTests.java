@@ -0,0 +1,109 @@
+package uk.org.lidalia.slf4jtest;
+
+import org.joda.time.DateTimeUtils;
+import org.joda.time.Instant;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableMap;
+
+import uk.org.lidalia.slf4jext.Level;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.hamcrest.collection.IsEmptyIterable.emptyIterable;
+import static org.junit.Assert.assertThat;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.error;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.info;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.warn;
+
+public class LoggingEventQueryTests {
+
+    private final TestLoggerFactory loggerFactory = new TestLoggerFactory();
+    private final Marker audit = MarkerFactory.getDetachedMarker("audit");
+
+    @Before
+    public void logEvents() {
+        DateTimeUtils.setCurrentMillisFixed(1000L);
+        loggerFactory.getLogger("com.acme.payments").info("payment taken");
+        DateTimeUtils.setCurrentMillisFixed(2000L);
+        loggerFactory.getLogger("com.acme.payments.db").error(audit, "payment failed");
+        DateTimeUtils.setCurrentMillisFixed(3000L);
+        MDC.put("tenant", "x");
+        loggerFactory.getLogger("com.acme.paymentsgateway").warn("gateway slow");
+        MDC.clear();
+        loggerFactory.getLogger("com.acme.orders").error("order failed");
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @After
+    public void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
+        MDC.clear();
+    }
+
+    @Test
+    public void combinesCriteria() {
+        assertThat(loggerFactory.query().loggerNamePrefix("com.acme.payments").levels(Level.ERROR).execute().toList(),
+                is(asList(error(audit, "payment failed"))));
+        assertThat(loggerFactory.query().levels(Level.ERROR, Level.WARN)
+                        .between(new Instant(2500L), new Instant(4000L)).execute().toList(),
+                is(asList(warn(ImmutableMap.of("tenant", "x"), "gateway slow"), error("order failed"))));
+        assertThat(loggerFactory.query().mdc("tenant", "x").thread(Thread.currentThread().getName()).execute().toList(),
+                is(asList(warn(ImmutableMap.of("tenant", "x"), "gateway slow"))));
+        assertThat(loggerFactory.query().marker(audit).levels(Level.INFO).execute(), is(emptyIterable()));
+    }
+
+    @Test
+    public void emptyQueryReturnsAllEvents() {
+        assertThat(loggerFactory.query().execute().size(), is(4));
+        assertThat(loggerFactory.query().explain(), is("scan (4 candidates)"));
+    }
+
+    @Test
+    public void choosesSmallestCandidateSource() {
+        assertThat(loggerFactory.query().levels(Level.INFO).marker(audit).explain(),
+                is("levels=[INFO] (1 candidates) filtered by marker=audit"));
+
+        loggerFactory.enableMarkerIndex();
+        loggerFactory.getLogger("com.acme.orders").info("order taken");
+
+        assertThat(loggerFactory.query().levels(Level.INFO).marker(audit).explain(),
+                is("marker=audit (1 candidates) filtered by levels=[INFO]"));
+        assertThat(loggerFactory.query().between(new Instant(0L), new Instant(1500L)).levels(Level.ERROR).explain(),
+                startsWith("between="));
+    }
+
+    @Test
+    public void resultIsALazyViewOfASnapshot() {
+        FluentIterable<LoggingEvent> infos = loggerFactory.query().levels(Level.INFO).execute();
+        loggerFactory.getLogger("com.acme").info("later");
+
+        assertThat(infos.toList(), is(asList(info("payment taken"))));
+    }
+
+    @Test
+    public void reusedQueryPlansAgainstTheCurrentEvents() {
+        final LoggingEventQuery query = loggerFactory.query().between(new Instant(0L), new Instant(1500L));
+        assertThat(query.explain(), is("between=[" + new Instant(0L) + ", " + new Instant(1500L) + ") (1 candidates)"));
+
+        DateTimeUtils.setCurrentMillisFixed(1200L);
+        loggerFactory.getLogger("com.acme").info("later");
+
+        assertThat(query.execute().toList(), is(asList(info("payment taken"), info("later"))));
+    }
+
+    @Test
+    public void loggerNamePrefixMatchesWholeNameSegments() {
+        assertThat(LoggingEventQuery.isSameOrDescendant("com.acme.payments", "com.acme.payments"), is(true));
+        assertThat(LoggingEventQuery.isSameOrDescendant("com.acme.payments.db", "com.acme.payments"), is(true));
+        assertThat(LoggingEventQuery.isSameOrDescendant("com.acme.paymentsgateway", "com.acme.payments"), is(false));
+        assertThat(LoggingEventQuery.isSameOrDescendant("com.acme", ""), is(true));
+    }
+}
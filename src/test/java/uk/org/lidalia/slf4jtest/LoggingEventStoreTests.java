@@ -0,0 +1,317 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTimeUtils;
+import org.junit.Test;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.collection.IsEmptyCollection.empty;
+import static org.junit.Assert.assertThat;
+import static uk.org.lidalia.slf4jext.Level.DEBUG;
+import static uk.org.lidalia.slf4jext.Level.ERROR;
+import static uk.org.lidalia.slf4jext.Level.INFO;
+import static uk.org.lidalia.slf4jext.Level.WARN;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.debug;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.error;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.info;
+
+public class LoggingEventStoreTests {
+
+    private final LoggingEventStore store = new LoggingEventStore();
+
+    @Test
+    public void partitionsEventsByLevelPreservingOrder() {
+        addAll(info("1"), error("2"), info("3"), debug("4"), error("5"));
+
+        assertThat(store.getLoggingEvents(), is(asList(info("1"), error("2"), info("3"), debug("4"), error("5"))));
+        assertThat(store.getLoggingEvents(INFO), is(asList(info("1"), info("3"))));
+        assertThat(store.getLoggingEvents(ERROR), is(asList(error("2"), error("5"))));
+        assertThat(store.getLoggingEvents(WARN), is(empty()));
+        assertThat(store.count(ERROR), is(2));
+        assertThat(store.count(DEBUG), is(1));
+        assertThat(store.count(WARN), is(0));
+        assertThat(store.size(), is(5));
+    }
+
+    @Test
+    public void viewsAreSnapshotsUnaffectedByLaterAddsAndGrowth() {
+        store.add(info("first"));
+        List<LoggingEvent> all = store.getLoggingEvents();
+        List<LoggingEvent> infos = store.getLoggingEvents(INFO);
+
+        for (int i = 0; i < 100; i++) {
+            store.add(info("more"));
+        }
+
+        assertThat(all, is(asList(info("first"))));
+        assertThat(infos, is(asList(info("first"))));
+        assertThat(store.count(INFO), is(101));
+    }
+
+    @Test
+    public void drainReturnsEventsAndEmptiesStore() {
+        addAll(info("1"), error("2"));
+
+        List<LoggingEvent> drained = store.drain();
+        store.add(info("3"));
+
+        assertThat(drained, is(asList(info("1"), error("2"))));
+        assertThat(store.getLoggingEvents(), is(asList(info("3"))));
+        assertThat(store.count(ERROR), is(0));
+    }
+
+    @Test
+    public void clearDoesNotAffectExistingViews() {
+        addAll(info("1"), error("2"));
+        List<LoggingEvent> errors = store.getLoggingEvents(ERROR);
+
+        store.clear();
+
+        assertThat(errors, is(asList(error("2"))));
+        assertThat(store.getLoggingEvents(), is(empty()));
+        assertThat(store.count(ERROR), is(0));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void viewsAreUnmodifiable() {
+        store.getLoggingEvents().add(info("1"));
+    }
+
+    @Test
+    public void subListOfViewIsAView() {
+        addAll(info("1"), error("2"), info("3"), info("4"));
+
+        assertThat(store.getLoggingEvents(INFO).subList(1, 3), is(asList(info("3"), info("4"))));
+    }
+
+    @Test
+    public void indexedAndUnindexedLookupsAgree() {
+        Marker parent = MarkerFactory.getDetachedMarker("parent");
+        Marker child = MarkerFactory.getDetachedMarker("child");
+        parent.add(child);
+        addAll(info(parent, "1"), info(child, "2"), info(ImmutableMap.of("request", "a"), "3"), info("4"));
+
+        List<LoggingEvent> unindexedChild = store.getLoggingEvents(SecondaryIndex.MARKER, "child");
+        List<LoggingEvent> unindexedRequest = store.getLoggingEvents(SecondaryIndex.mdc("request"), "a");
+        store.addIndex(SecondaryIndex.MARKER);
+        store.addIndex(SecondaryIndex.mdc("request"));
+
+        assertThat(store.hasIndex(SecondaryIndex.MARKER), is(true));
+        assertThat(store.getLoggingEvents(SecondaryIndex.MARKER, "child"), is(asList(info(parent, "1"), info(child, "2"))));
+        assertThat(store.getLoggingEvents(SecondaryIndex.MARKER, "child"), is(unindexedChild));
+        assertThat(store.getLoggingEvents(SecondaryIndex.MARKER, "parent"), is(asList(info(parent, "1"))));
+        assertThat(store.getLoggingEvents(SecondaryIndex.mdc("request"), "a"), is(unindexedRequest));
+        assertThat(store.getLoggingEvents(SecondaryIndex.mdc("request"), "b"), is(empty()));
+    }
+
+    @Test
+    public void indexesAreMaintainedOnAddAndSurviveClear() {
+        store.addIndex(SecondaryIndex.THREAD_NAME);
+        store.add(info("1"));
+        store.clear();
+        store.add(info("2"));
+
+        assertThat(store.getLoggingEvents(SecondaryIndex.THREAD_NAME, Thread.currentThread().getName()),
+                is(asList(info("2"))));
+    }
+
+    @Test
+    public void eventsBetweenUsesHalfOpenWindow() {
+        LoggingEvent at100 = infoAt(100, "1");
+        LoggingEvent at200 = infoAt(200, "2");
+        LoggingEvent at300 = infoAt(300, "3");
+        addAll(at100, at200, at300);
+
+        assertThat(store.getLoggingEventsBetween(100, 300), is(asList(at100, at200)));
+        assertThat(store.getLoggingEventsBetween(150, 301), is(asList(at200, at300)));
+        assertThat(store.getLoggingEventsBetween(301, 400), is(empty()));
+        assertThat(store.getLoggingEventsBetween(300, 100), is(empty()));
+    }
+
+    @Test
+    public void eventsBetweenFindsEventsAddedOutOfTimestampOrder() {
+        LoggingEvent at100 = infoAt(100, "1");
+        LoggingEvent at300 = infoAt(300, "2");
+        LoggingEvent at200 = infoAt(200, "3");
+        LoggingEvent at400 = infoAt(400, "4");
+        addAll(at100, at300, at200, at400);
+
+        assertThat(store.getLoggingEventsBetween(150, 250), is(asList(at200)));
+        assertThat(store.getLoggingEventsBetween(100, 301), is(asList(at100, at300, at200)));
+        assertThat(store.getLoggingEventsBetween(350, 500), is(asList(at400)));
+    }
+
+    @Test
+    public void expiredEventsAreHiddenFromEveryReadAndFromTheEstimate() {
+        TimeToLive timeToLive = new TimeToLive();
+        timeToLive.set(100, TimeUnit.MILLISECONDS);
+        LoggingEventStore expiring = new LoggingEventStore(timeToLive);
+        LoggingEvent at100 = infoAt(100, "1");
+        LoggingEvent at150 = infoAt(150, "2");
+        LoggingEvent at250 = infoAt(250, "3");
+        DateTimeUtils.setCurrentMillisFixed(150);
+        try {
+            expiring.add(at100);
+            List<LoggingEvent> before = expiring.getLoggingEvents();
+            expiring.add(at150);
+            long estimateWithBoth = expiring.getEstimatedBytes();
+            DateTimeUtils.setCurrentMillisFixed(251);
+            expiring.add(at250);
+
+            assertThat(expiring.getLoggingEvents(), is(asList(at250)));
+            assertThat(expiring.getLoggingEvents(INFO), is(asList(at250)));
+            assertThat(expiring.getLoggingEventsBetween(0, 300), is(asList(at250)));
+            assertThat(expiring.size(), is(1));
+            assertThat(expiring.count(INFO), is(1));
+            assertThat(expiring.getEstimatedBytes() < estimateWithBoth, is(true));
+            assertThat(before, is(asList(at100)));
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+    }
+
+    @Test
+    public void compactingExpiredEventsPreservesCheckpoints() {
+        TimeToLive timeToLive = new TimeToLive();
+        timeToLive.set(10, TimeUnit.MILLISECONDS);
+        LoggingEventStore expiring = new LoggingEventStore(timeToLive);
+        DateTimeUtils.setCurrentMillisFixed(0);
+        try {
+            for (int i = 0; i < 10; i++) {
+                expiring.add(info("old " + i));
+            }
+            Checkpoint checkpoint = expiring.checkpoint();
+            DateTimeUtils.setCurrentMillisFixed(100);
+            expiring.add(info("new 1"));
+            expiring.add(info("new 2"));
+
+            assertThat(expiring.getLoggingEvents(), is(asList(info("new 1"), info("new 2"))));
+            assertThat(expiring.getLoggingEventsSince(checkpoint), is(asList(info("new 1"), info("new 2"))));
+            assertThat(expiring.getLoggingEventsBetween(checkpoint, expiring.checkpoint()),
+                    is(asList(info("new 1"), info("new 2"))));
+            assertThat(expiring.checkpoint().getPosition(), is(12));
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+    }
+
+    @Test
+    public void eventsBetweenCheckpointsTakenBeforeCompactionLeaveOutExpiredEvents() {
+        TimeToLive timeToLive = new TimeToLive();
+        timeToLive.set(10, TimeUnit.MILLISECONDS);
+        LoggingEventStore expiring = new LoggingEventStore(timeToLive);
+        DateTimeUtils.setCurrentMillisFixed(0);
+        try {
+            Checkpoint first = expiring.checkpoint();
+            for (int i = 0; i < 10; i++) {
+                expiring.add(info("old " + i));
+            }
+            DateTimeUtils.setCurrentMillisFixed(5);
+            expiring.add(info("new 1"));
+            Checkpoint second = expiring.checkpoint();
+            DateTimeUtils.setCurrentMillisFixed(12);
+            expiring.add(info("new 2"));
+
+            assertThat(expiring.getLoggingEventsBetween(first, second), is(asList(info("new 1"))));
+            DateTimeUtils.setCurrentMillisFixed(16);
+            assertThat(expiring.getLoggingEventsBetween(first, second), is(empty()));
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+    }
+
+    @Test
+    public void evictingAndRemovingEventsPreservesCheckpoints() {
+        addAll(info("1"), debug("2"));
+        Checkpoint checkpoint = store.checkpoint();
+        addAll(info("3"), debug("4"), info("5"));
+
+        store.evictOldest(1);
+        store.removeLevels(EnumSet.of(DEBUG));
+        Set<LoggingEvent> toRemove = Sets.newIdentityHashSet();
+        toRemove.add(store.getLoggingEvents().get(1));
+        store.removeAll(toRemove);
+
+        assertThat(store.getLoggingEvents(), is(asList(info("3"))));
+        assertThat(store.getLoggingEventsSince(checkpoint), is(asList(info("3"))));
+        assertThat(store.getLoggingEventsBetween(checkpoint, store.checkpoint()), is(asList(info("3"))));
+        assertThat(store.checkpoint().getGeneration(), is(checkpoint.getGeneration()));
+        assertThat(store.checkpoint().getPosition(), is(5));
+    }
+
+    @Test
+    public void listenersAreToldOfEventsEvictedRemovedAndExpired() {
+        final List<LoggingEvent> removed = new ArrayList<>();
+        TimeToLive timeToLive = new TimeToLive();
+        LoggingEventStore expiring = new LoggingEventStore(timeToLive);
+        expiring.addListener(new LoggingEventStore.Listener() {
+            @Override
+            public void added(final LoggingEvent event) {
+            }
+
+            @Override
+            public void cleared() {
+            }
+
+            @Override
+            public void removed(final List<LoggingEvent> events) {
+                removed.addAll(events);
+            }
+        });
+        LoggingEvent at100 = infoAt(100, "1");
+        LoggingEvent at200 = debugAt(200, "2");
+        LoggingEvent at300 = infoAt(300, "3");
+        LoggingEvent at400 = infoAt(400, "4");
+        expiring.add(at100);
+        expiring.add(at200);
+        expiring.add(at300);
+        expiring.add(at400);
+
+        expiring.evictOldest(1);
+        expiring.removeLevels(EnumSet.of(DEBUG));
+        timeToLive.set(100, TimeUnit.MILLISECONDS);
+        DateTimeUtils.setCurrentMillisFixed(450);
+        try {
+            expiring.size();
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+
+        assertThat(removed, is(asList(at100, at200, at300)));
+    }
+
+    private static LoggingEvent infoAt(final long millis, final String message) {
+        DateTimeUtils.setCurrentMillisFixed(millis);
+        try {
+            return info(message);
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+    }
+
+    private static LoggingEvent debugAt(final long millis, final String message) {
+        DateTimeUtils.setCurrentMillisFixed(millis);
+        try {
+            return debug(message);
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+    }
+
+    private void addAll(final LoggingEvent... events) {
+        for (LoggingEvent event: events) {
+            store.add(event);
+        }
+    }
+}
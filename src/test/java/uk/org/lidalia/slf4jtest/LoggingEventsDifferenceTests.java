@@ -0,0 +1,63 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMultiset;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.debug;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.error;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.info;
+
+public class LoggingEventsDifferenceTests {
+
+    private final List<LoggingEvent> actual = asList(info("one"), debug("two"), info("one"), error("three"));
+
+    @Test
+    public void noDifferenceWhenSameEventsInDifferentOrder() {
+        LoggingEventsDifference difference = LoggingEventsDifference.between(
+                asList(error("three"), info("one"), info("one"), debug("two")), actual);
+
+        assertThat(difference.isEmpty(), is(true));
+        assertThat(difference.getMissing(), is(ImmutableMultiset.<LoggingEvent>of()));
+        assertThat(difference.getUnexpected(), is(ImmutableMultiset.<LoggingEvent>of()));
+    }
+
+    @Test
+    public void reportsMissingAndUnexpectedCounts() {
+        LoggingEventsDifference difference = LoggingEventsDifference.between(
+                asList(info("one"), debug("two"), debug("two"), info("four")), actual);
+
+        assertThat(difference.isEmpty(), is(false));
+        assertThat(difference.getMissing(), is(ImmutableMultiset.of(debug("two"), info("four"))));
+        assertThat(difference.getUnexpected(), is(ImmutableMultiset.of(info("one"), error("three"))));
+    }
+
+    @Test
+    public void containsExactlyInAnyOrder() {
+        assertThat(LoggingEventsDifference.containsExactlyInAnyOrder(actual,
+                asList(error("three"), info("one"), debug("two"), info("one"))), is(true));
+        assertThat(LoggingEventsDifference.containsExactlyInAnyOrder(actual,
+                asList(error("three"), info("one"), debug("two"))), is(false));
+        assertThat(LoggingEventsDifference.containsExactlyInAnyOrder(actual,
+                asList(error("three"), info("one"), debug("two"), info("one"), info("one"))), is(false));
+    }
+
+    @Test
+    public void containsAllRespectsDuplicates() {
+        assertThat(LoggingEventsDifference.containsAll(actual, asList(info("one"), info("one"))), is(true));
+        assertThat(LoggingEventsDifference.containsAll(actual, asList(info("one"), info("one"), info("one"))), is(false));
+        assertThat(LoggingEventsDifference.containsAll(actual, Collections.<LoggingEvent>emptyList()), is(true));
+    }
+
+    @Test
+    public void containsNone() {
+        assertThat(LoggingEventsDifference.containsNone(actual, asList(info("four"), debug("one"))), is(true));
+        assertThat(LoggingEventsDifference.containsNone(actual, asList(info("four"), error("three"))), is(false));
+    }
+}
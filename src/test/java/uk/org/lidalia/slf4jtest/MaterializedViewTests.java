@@ -0,0 +1,152 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTimeUtils;
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+
+import uk.org.lidalia.slf4jext.Level;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.collection.IsEmptyCollection.empty;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.error;
+
+public class MaterializedViewTests {
+
+    private final TestLoggerFactory loggerFactory = new TestLoggerFactory();
+    private final Predicate<LoggingEvent> isError = new Predicate<LoggingEvent>() {
+        @Override
+        public boolean apply(final LoggingEvent event) {
+            return event.getLevel() == Level.ERROR;
+        }
+    };
+
+    @Test
+    public void viewContainsExistingAndNewMatchingEvents() {
+        loggerFactory.getLogger("name1").error("first");
+        loggerFactory.getLogger("name1").info("ignored");
+
+        MaterializedView errors = loggerFactory.registerView("errors", isError);
+        loggerFactory.getLogger("name2").error("second");
+
+        assertThat(errors.getName(), is("errors"));
+        assertThat(errors.size(), is(2));
+        assertThat(errors.getLoggingEvents(), is(asList(error("first"), error("second"))));
+        assertThat(loggerFactory.getView("errors").get(), is(errors));
+    }
+
+    @Test
+    public void readsAreSnapshots() {
+        MaterializedView errors = loggerFactory.registerView("errors", isError);
+        loggerFactory.getLogger("name1").error("first");
+        List<LoggingEvent> snapshot = errors.getLoggingEvents();
+
+        loggerFactory.getLogger("name1").error("second");
+
+        assertThat(snapshot, is(asList(error("first"))));
+    }
+
+    @Test
+    public void clearAllEmptiesViewsButKeepsThemRegistered() {
+        MaterializedView errors = loggerFactory.registerView("errors", isError);
+        loggerFactory.getLogger("name1").error("first");
+
+        loggerFactory.clearAllLoggers();
+        loggerFactory.getLogger("name1").error("second");
+
+        assertThat(errors.getLoggingEvents(), is(asList(error("second"))));
+    }
+
+    @Test
+    public void viewsLoseEventsTheFactorySheds() {
+        MaterializedView debugs = loggerFactory.registerView("debugs", new Predicate<LoggingEvent>() {
+            @Override
+            public boolean apply(final LoggingEvent event) {
+                return event.getLevel() == Level.DEBUG;
+            }
+        });
+        MaterializedView errors = loggerFactory.registerView("errors", isError);
+        loggerFactory.getLogger("name1").debug("shed");
+        loggerFactory.getLogger("name1").error("kept");
+
+        loggerFactory.shedLowPriorityEvents();
+
+        assertThat(debugs.getLoggingEvents(), is(empty()));
+        assertThat(errors.getLoggingEvents(), is(asList(error("kept"))));
+    }
+
+    @Test
+    public void viewsLoseExpiredEventsAndKeepTheRest() {
+        MaterializedView errors = loggerFactory.registerView("errors", isError);
+        loggerFactory.setTimeToLive(100, TimeUnit.MILLISECONDS);
+        try {
+            for (int i = 0; i < 50; i++) {
+                DateTimeUtils.setCurrentMillisFixed(1000L + i * 10);
+                loggerFactory.getLogger("name1").error("message " + i);
+                loggerFactory.getLogger("name1").info("ignored " + i);
+            }
+            List<LoggingEvent> snapshot = errors.getLoggingEvents();
+            DateTimeUtils.setCurrentMillisFixed(1500L);
+            loggerFactory.getLogger("name1").error("last");
+
+            List<LoggingEvent> live = new ArrayList<>();
+            for (int i = 40; i < 50; i++) {
+                live.add(error("message " + i));
+            }
+            live.add(error("last"));
+            assertThat(errors.getLoggingEvents(), is(live));
+            assertThat(errors.size(), is(11));
+            assertThat(snapshot.size(), is(11));
+            assertThat(snapshot.get(0), is(error("message 39")));
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+    }
+
+    @Test
+    public void removedViewIsNoLongerMaintained() {
+        MaterializedView errors = loggerFactory.registerView("errors", isError);
+        loggerFactory.removeView("errors");
+        loggerFactory.getLogger("name1").error("first");
+
+        assertThat(errors.getLoggingEvents(), is(empty()));
+        assertThat(loggerFactory.getView("errors").isPresent(), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cannotRegisterTwoViewsWithTheSameName() {
+        loggerFactory.registerView("errors", isError);
+        loggerFactory.registerView("errors", isError);
+    }
+
+    @Test
+    public void throwingPredicateFailsTheViewNotTheLoggingCall() {
+        MaterializedView view = loggerFactory.registerView("errors", new Predicate<LoggingEvent>() {
+            @Override
+            public boolean apply(final LoggingEvent event) {
+                if (event.getLevel() == Level.INFO) {
+                    throw new IllegalArgumentException("bad predicate");
+                }
+                return event.getLevel() == Level.ERROR;
+            }
+        });
+        loggerFactory.getLogger("name1").error("first");
+        loggerFactory.getLogger("name1").info("throws");
+        loggerFactory.getLogger("name1").error("second");
+
+        assertThat(loggerFactory.getLogger("name1").getAllLoggingEvents().size(), is(3));
+        try {
+            view.getLoggingEvents();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(e.getCause().getMessage(), is("bad predicate"));
+        }
+    }
+}
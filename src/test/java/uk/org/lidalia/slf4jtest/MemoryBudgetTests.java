@@ -0,0 +1,133 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+
+import org.junit.Test;
+
+import uk.org.lidalia.slf4jtest.TestLoggerFactory.OverBudgetPolicy;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.info;
+
+public class MemoryBudgetTests {
+
+    private final TestLoggerFactory loggerFactory = new TestLoggerFactory();
+
+    @Test
+    public void estimatesGrowWithEventsAndResetOnClear() {
+        TestLogger logger = loggerFactory.getLogger("name1");
+        assertThat(loggerFactory.getEstimatedBytes(), is(0L));
+
+        logger.info("short");
+        long oneShortEvent = logger.getEstimatedBytes();
+        logger.info("a considerably longer message with {}", "an argument");
+
+        assertThat(oneShortEvent, is(greaterThan(0L)));
+        assertThat(logger.getEstimatedBytes() - oneShortEvent, is(greaterThan(oneShortEvent)));
+        assertThat(loggerFactory.getEstimatedBytes(), is(logger.getEstimatedBytes()));
+        assertThat(loggerFactory.getEstimatedBytesByLogger().get("name1"), is(logger.getEstimatedBytes()));
+
+        loggerFactory.clearAllLoggers();
+
+        assertThat(loggerFactory.getEstimatedBytes(), is(0L));
+        assertThat(logger.getEstimatedBytes(), is(0L));
+    }
+
+    @Test
+    public void throwablesAreCounted() {
+        TestLogger logger = loggerFactory.getLogger("name1");
+        logger.info("message");
+        long withoutThrowable = logger.getEstimatedBytes();
+        logger.clearAll();
+
+        logger.info("message", new RuntimeException("boom"));
+
+        assertThat(logger.getEstimatedBytes(), is(greaterThan(withoutThrowable)));
+    }
+
+    @Test
+    public void failPolicyRejectsEventsOnceOverBudget() {
+        TestLogger logger = loggerFactory.getLogger("name1");
+        loggerFactory.setMemoryBudget(1000, OverBudgetPolicy.FAIL);
+        int logged = 0;
+        try {
+            while (logged < 1000) {
+                logger.info("message " + logged);
+                logged++;
+            }
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString("over the memory budget of 1000 bytes"));
+            assertThat(e.getMessage(), containsString("name1="));
+        }
+        assertThat(logger.getAllLoggingEvents().size(), is(logged));
+    }
+
+    @Test
+    public void evictOldestPolicyKeepsMostRecentEventsWithinBudget() {
+        TestLogger logger1 = loggerFactory.getLogger("name1");
+        TestLogger logger2 = loggerFactory.getLogger("name2");
+        loggerFactory.setMemoryBudget(10000, OverBudgetPolicy.EVICT_OLDEST);
+
+        for (int i = 0; i < 1000; i++) {
+            (i % 2 == 0 ? logger1 : logger2).info("message " + i);
+        }
+
+        List<LoggingEvent> retained = loggerFactory.getAllLoggingEventsFromLoggers();
+        assertThat(loggerFactory.getEstimatedBytes(), is(lessThanOrEqualTo(10000L)));
+        assertThat(retained.size(), is(lessThan(1000)));
+        assertThat(retained.get(retained.size() - 1), is(info("message 999")));
+        assertThat(logger1.getAllLoggingEvents().size() + logger2.getAllLoggingEvents().size(), is(retained.size()));
+    }
+
+    @Test
+    public void evictedEventsAreReleasedByEveryStoreHoldingThem() throws InterruptedException {
+        TestLogger logger = loggerFactory.getLogger("name1");
+        loggerFactory.setMemoryBudget(10000, OverBudgetPolicy.EVICT_OLDEST);
+        Object argument = new Object();
+        WeakReference<Object> evicted = new WeakReference<>(argument);
+        logger.info("message {}", argument);
+        argument = null;
+        long bytesWithFirstEvent = logger.getEstimatedBytes();
+
+        for (int i = 0; i < 1000; i++) {
+            logger.info("message " + i);
+        }
+
+        assertThat(logger.getEstimatedBytes(), is(lessThanOrEqualTo(10000L)));
+        assertThat(logger.getLoggingEvents(), is(logger.getAllLoggingEvents()));
+        assertThat(loggerFactory.getLoggingEventsFromLoggers(), is(loggerFactory.getAllLoggingEventsFromLoggers()));
+        for (int attempt = 0; attempt < 10 && evicted.get() != null; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertThat(evicted.get(), is(nullValue()));
+        assertThat(bytesWithFirstEvent, is(greaterThan(0L)));
+    }
+
+    @Test
+    public void removedBudgetNoLongerApplies() {
+        loggerFactory.setMemoryBudget(1, OverBudgetPolicy.FAIL);
+        loggerFactory.removeMemoryBudget();
+
+        loggerFactory.getLogger("name1").info("message1");
+        loggerFactory.getLogger("name1").info("message2");
+    }
+
+    @Test
+    public void resetRemovesTheBudget() {
+        loggerFactory.setMemoryBudget(1, OverBudgetPolicy.FAIL);
+        loggerFactory.doReset();
+
+        loggerFactory.getLogger("name1").info("message1");
+        loggerFactory.getLogger("name1").info("message2");
+    }
+}
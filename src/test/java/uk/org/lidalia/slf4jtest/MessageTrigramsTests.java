@@ -0,0 +1,93 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static uk.org.lidalia.test.Assert.isNotInstantiable;
+
+public class MessageTrigramsTests {
+
+    private static final Set<String> NONE = Collections.emptySet();
+
+    @Test
+    public void trigramsOfText() {
+        assertThat(MessageTrigrams.of("abcab"), is((Set<String>) ImmutableSet.of("abc", "bca", "cab")));
+        assertThat(MessageTrigrams.of("ab"), is(NONE));
+    }
+
+    @Test
+    public void requiredTrigramsOfLiteralRuns() {
+        assertThat(MessageTrigrams.requiredBy(Pattern.compile("abcd.*xyz")),
+                is((Set<String>) ImmutableSet.of("abc", "bcd", "xyz")));
+    }
+
+    @Test
+    public void optionalCharactersAreNotRequired() {
+        assertThat(MessageTrigrams.requiredBy(Pattern.compile("abcd?")), is((Set<String>) ImmutableSet.of("abc")));
+        assertThat(MessageTrigrams.requiredBy(Pattern.compile("abcd{0,2}")), is((Set<String>) ImmutableSet.of("abc")));
+        assertThat(MessageTrigrams.requiredBy(Pattern.compile("abcd+e")), is((Set<String>) ImmutableSet.of("abc", "bcd")));
+    }
+
+    @Test
+    public void groupsClassesAndEscapesBreakRuns() {
+        assertThat(MessageTrigrams.requiredBy(Pattern.compile("ab(cde)fg[hij]kl\\d\\x41mn")), is(NONE));
+        assertThat(MessageTrigrams.requiredBy(Pattern.compile("order \\{\\} ok")),
+                is((Set<String>) MessageTrigrams.of("order {} ok")));
+    }
+
+    @Test
+    public void closingBracketFirstInAClassIsALiteral() {
+        assertThat(MessageTrigrams.requiredBy(Pattern.compile("[]abc]xyz")), is((Set<String>) ImmutableSet.of("xyz")));
+        assertThat(MessageTrigrams.requiredBy(Pattern.compile("[^]abc]xyz")), is((Set<String>) ImmutableSet.of("xyz")));
+        assertThat(MessageTrigrams.requiredBy(Pattern.compile("(a[)]bcd)?xyz")), is((Set<String>) ImmutableSet.of("xyz")));
+    }
+
+    @Test
+    public void indexedAndScannedMatchesAgreeForTrickyPatterns() {
+        List<String> messages = asList("]xyz", "axyz", "abcxyz", "qxyz", "xyz", "a)bcdxyz", "[abc]xyz", "a[b]cxyz",
+                "abc?xyz", "ab{2}xyz", "x.yz", "\\xyz");
+        List<String> patterns = asList("[]abc]xyz", "[^]abc]xyz", "(a[)]bcd)?xyz", "[a[bc]]xyz", "\\[abc\\]xyz",
+                "\\Q[abc]\\Exyz", "a[\\]]?bcxyz", "abc\\?xyz", "ab\\{2\\}xyz", "[\\\\]xyz", "x\\.yz");
+        TestLoggerFactory indexed = new TestLoggerFactory();
+        indexed.enableMessageIndex();
+        TestLoggerFactory scanned = new TestLoggerFactory();
+        for (String message: messages) {
+            indexed.getLogger("name1").info(message);
+            scanned.getLogger("name1").info(message);
+        }
+
+        for (String regex: patterns) {
+            Pattern pattern = Pattern.compile(regex);
+            assertThat(regex, indexed.getAllLoggingEventsWithMessageMatching(pattern),
+                    is(scanned.getAllLoggingEventsWithMessageMatching(pattern)));
+        }
+        assertThat(scanned.getAllLoggingEventsWithMessageMatching(Pattern.compile("[]abc]xyz")).size(), is(5));
+    }
+
+    @Test
+    public void unsupportedConstructsRequireNothing() {
+        assertThat(MessageTrigrams.requiredBy(Pattern.compile("abcdef|ghijkl")), is(NONE));
+        assertThat(MessageTrigrams.requiredBy(Pattern.compile("(?i)abcdef")), is(NONE));
+        assertThat(MessageTrigrams.requiredBy(Pattern.compile("abcdef", Pattern.CASE_INSENSITIVE)), is(NONE));
+    }
+
+    @Test
+    public void literalPatternRequiresAllItsTrigrams() {
+        assertThat(MessageTrigrams.requiredBy(Pattern.compile("a.b|c", Pattern.LITERAL)),
+                is((Set<String>) ImmutableSet.of("a.b", ".b|", "b|c")));
+    }
+
+    @Test
+    public void notInstantiable() {
+        assertThat(MessageTrigrams.class, isNotInstantiable());
+    }
+}
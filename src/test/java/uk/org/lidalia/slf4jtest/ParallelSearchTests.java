@@ -0,0 +1,89 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+
+import uk.org.lidalia.slf4jext.Level;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.warn;
+
+public class ParallelSearchTests {
+
+    private final TestLoggerFactory loggerFactory = new TestLoggerFactory();
+    private final Predicate<LoggingEvent> isWarn = new Predicate<LoggingEvent>() {
+        @Override
+        public boolean apply(final LoggingEvent event) {
+            return event.getLevel() == Level.WARN;
+        }
+    };
+
+    @Test
+    public void findAllReturnsMatchesInOrderWhenSplit() {
+        List<LoggingEvent> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            if (i % 7 == 0) {
+                loggerFactory.getLogger("name" + i % 3).warn("message" + i);
+                expected.add(warn("message" + i));
+            } else {
+                loggerFactory.getLogger("name" + i % 3).info("message" + i);
+            }
+        }
+        loggerFactory.setParallelismThreshold(10);
+
+        assertThat(loggerFactory.findAll(isWarn), is(expected));
+    }
+
+    @Test
+    public void findAllRunsSequentiallyBelowThreshold() {
+        loggerFactory.getLogger("name1").info("message1");
+        loggerFactory.getLogger("name1").warn("message2");
+
+        assertThat(loggerFactory.findAll(isWarn), is(asList(warn("message2"))));
+    }
+
+    @Test
+    public void anyMatchFindsLastEventWhenSplit() {
+        for (int i = 0; i < 1000; i++) {
+            loggerFactory.getLogger("name1").info("message" + i);
+        }
+        loggerFactory.setParallelismThreshold(10);
+
+        assertThat(loggerFactory.anyMatch(isWarn), is(false));
+
+        loggerFactory.getLogger("name2").warn("last");
+
+        assertThat(loggerFactory.anyMatch(isWarn), is(true));
+    }
+
+    @Test
+    public void findAllOnEmptyFactory() {
+        assertThat(loggerFactory.findAll(isWarn).isEmpty(), is(true));
+        assertThat(loggerFactory.anyMatch(isWarn), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void thresholdMustBePositive() {
+        loggerFactory.setParallelismThreshold(0);
+    }
+
+    @Test
+    public void defaultThreshold() {
+        assertThat(loggerFactory.getParallelismThreshold(), is(TestLoggerFactory.DEFAULT_PARALLELISM_THRESHOLD));
+    }
+
+    @Test
+    public void resetRestoresDefaultThreshold() {
+        loggerFactory.setParallelismThreshold(10);
+
+        loggerFactory.doReset();
+
+        assertThat(loggerFactory.getParallelismThreshold(), is(TestLoggerFactory.DEFAULT_PARALLELISM_THRESHOLD));
+    }
+}
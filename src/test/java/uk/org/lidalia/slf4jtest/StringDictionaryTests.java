@@ -0,0 +1,81 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+
+public class StringDictionaryTests {
+
+    @Test
+    public void equalValuesShareTheFirstInstanceAdded() {
+        StringDictionary dictionary = new StringDictionary(10);
+        String first = new String("value");
+        String second = new String("value");
+
+        assertSame(first, dictionary.canonical(first));
+        assertSame(first, dictionary.canonical(second));
+    }
+
+    @Test
+    public void valuesLongerThanTheMaximumAreReturnedAsTheyAre() {
+        StringDictionary dictionary = new StringDictionary(5);
+        dictionary.canonical(new String("too long"));
+        String second = new String("too long");
+
+        assertSame(second, dictionary.canonical(second));
+        assertSame(null, dictionary.canonical(null));
+    }
+
+    @Test
+    public void valuesAreNotRetainedOnceNothingElseRefersToThem() throws InterruptedException {
+        StringDictionary dictionary = new StringDictionary(10);
+        WeakReference<String> added = new WeakReference<>(dictionary.canonical(new String("value")));
+
+        for (int attempt = 0; attempt < 10 && added.get() != null; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertThat(added.get(), is(nullValue()));
+    }
+
+    @Test
+    public void eventsOfAFactoryShareTemplatesAndThreadNames() throws InterruptedException {
+        final TestLoggerFactory loggerFactory = new TestLoggerFactory();
+        final TestLogger logger1 = loggerFactory.getLogger("name1");
+        final TestLogger logger2 = loggerFactory.getLogger("name2");
+        logger1.info(new String("message {}"), 1);
+        Thread thread = new Thread("worker") {
+            @Override
+            public void run() {
+                logger2.info(new String("message {}"), 2);
+            }
+        };
+        thread.start();
+        thread.join();
+        Thread sameName = new Thread("worker") {
+            @Override
+            public void run() {
+                logger2.info("other");
+            }
+        };
+        sameName.start();
+        sameName.join();
+
+        LoggingEvent first = logger1.getAllLoggingEvents().get(0);
+        LoggingEvent second = logger2.getAllLoggingEvents().get(0);
+        LoggingEvent third = logger2.getAllLoggingEvents().get(1);
+        assertSame(first.getMessage(), second.getMessage());
+        assertSame(second.getThreadName(), third.getThreadName());
+
+        loggerFactory.doReset();
+        String template = new String("message {}");
+
+        assertSame(template, loggerFactory.canonical(template));
+    }
+}
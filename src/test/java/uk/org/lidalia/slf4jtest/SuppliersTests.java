@@ -12,6 +12,7 @@ import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
+import static uk.org.lidalia.slf4jtest.Suppliers.makeEmptyLoggingEventStore;
 import static uk.org.lidalia.slf4jtest.Suppliers.makeEmptyMutableList;
 import static uk.org.lidalia.slf4jtest.Suppliers.makeEmptyMutableMap;
 import static uk.org.lidalia.test.Assert.isNotInstantiable;
@@ -49,6 +50,15 @@ public class SuppliersTests {
         assertThat(map, is(expected));
     }
 
+    @Test
+    public void makeEmptyLoggingEventStoreAlwaysMakesANewEmptyStore() {
+        Supplier<LoggingEventStore> storeSupplier = makeEmptyLoggingEventStore();
+        LoggingEventStore store1 = storeSupplier.get();
+        LoggingEventStore store2 = storeSupplier.get();
+        assertThat(store1, is(not(sameInstance(store2))));
+        assertThat(store1.size(), is(0));
+    }
+
     @Test
     public void notInstantiable() {
         assertThat(Suppliers.class, isNotInstantiable());
@@ -1,15 +1,25 @@
 package uk.org.lidalia.slf4jtest;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
+import org.joda.time.DateTimeUtils;
+import org.joda.time.Instant;
 import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 import uk.org.lidalia.slf4jext.Level;
 
@@ -23,10 +33,16 @@ import static org.junit.Assert.assertThat;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.when;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
+import static uk.org.lidalia.slf4jext.ConventionalLevelHierarchy.DEBUG_LEVELS;
+import static uk.org.lidalia.slf4jext.ConventionalLevelHierarchy.ERROR_LEVELS;
+import static uk.org.lidalia.slf4jext.ConventionalLevelHierarchy.INFO_LEVELS;
+import static uk.org.lidalia.slf4jext.ConventionalLevelHierarchy.TRACE_LEVELS;
+import static uk.org.lidalia.slf4jext.ConventionalLevelHierarchy.WARN_LEVELS;
 import static uk.org.lidalia.slf4jext.Level.WARN;
 import static uk.org.lidalia.slf4jtest.LoggingEvent.debug;
 import static uk.org.lidalia.slf4jtest.LoggingEvent.info;
 import static uk.org.lidalia.slf4jtest.LoggingEvent.trace;
+import static uk.org.lidalia.slf4jtest.LoggingEvent.warn;
 import static uk.org.lidalia.slf4jtest.TestLoggerFactory.getInstance;
 import static uk.org.lidalia.test.ShouldThrow.shouldThrow;
 
@@ -271,10 +287,90 @@ public class TestLoggerFactoryTests {
         final OverridableProperties properties = mock(OverridableProperties.class);
         whenNew(OverridableProperties.class).withArguments("slf4jtest").thenReturn(properties);
         when(properties.getProperty("print.level", "OFF")).thenReturn("INFO");
+        when(properties.getProperty("levels", "")).thenReturn("");
 
         assertThat(TestLoggerFactory.getInstance().getPrintLevel(), is(Level.INFO));
     }
 
+    @Test
+    @PrepareForTest(TestLoggerFactory.class)
+    public void levelsTakenFromOverridableProperties() throws Exception {
+        final OverridableProperties properties = mock(OverridableProperties.class);
+        whenNew(OverridableProperties.class).withArguments("slf4jtest").thenReturn(properties);
+        when(properties.getProperty("print.level", "OFF")).thenReturn("OFF");
+        when(properties.getProperty("levels", "")).thenReturn("com.acme=INFO, com.acme.db = DEBUG");
+
+        assertThat(TestLoggerFactory.getInstance().getLevels(),
+                is(ImmutableMap.of("com.acme", Level.INFO, "com.acme.db", Level.DEBUG)));
+        assertThat(TestLoggerFactory.getInstance().getLogger("com.acme.db.Pool").getEnabledLevels(), is(DEBUG_LEVELS));
+        assertThat(TestLoggerFactory.getInstance().getLogger("com.acme.Service").getEnabledLevels(), is(INFO_LEVELS));
+    }
+
+    @Test
+    @PrepareForTest(TestLoggerFactory.class)
+    public void levelsInvalidInOverridableProperties() throws Exception {
+        final OverridableProperties properties = mock(OverridableProperties.class);
+        whenNew(OverridableProperties.class).withArguments("slf4jtest").thenReturn(properties);
+        when(properties.getProperty("print.level", "OFF")).thenReturn("OFF");
+        when(properties.getProperty("levels", "")).thenReturn("com.acme=LOUD");
+
+        final IllegalStateException illegalStateException = shouldThrow(IllegalStateException.class, new Runnable() {
+            @Override
+            public void run() {
+                TestLoggerFactory.getInstance();
+            }
+        });
+        assertThat(illegalStateException.getCause(), instanceOf(IllegalArgumentException.class));
+    }
+
+    @Test
+    public void configuredLevelsApplyHierarchicallyAndFollowChanges() {
+        TestLoggerFactory loggerFactory = new TestLoggerFactory();
+        TestLogger db = loggerFactory.getLogger("com.acme.db.Pool");
+        TestLogger other = loggerFactory.getLogger("org.other.Thing");
+        assertThat(db.getEnabledLevels(), is(Level.enablableValueSet()));
+
+        loggerFactory.setLevel("com.acme", Level.WARN);
+        loggerFactory.setLevel("ROOT", Level.ERROR);
+        assertThat(db.getEnabledLevels(), is(WARN_LEVELS));
+        assertThat(other.getEnabledLevels(), is(ERROR_LEVELS));
+
+        loggerFactory.setLevel("com.acme.db", Level.TRACE);
+        assertThat(db.getEnabledLevels(), is(TRACE_LEVELS));
+
+        loggerFactory.removeLevel("com.acme.db");
+        db.info("dropped");
+        db.warn("kept");
+        assertThat(db.getAllLoggingEvents(), is(asList(warn("kept"))));
+    }
+
+    @Test
+    public void levelsSetOnLoggerTakePrecedenceOverConfiguredLevels() {
+        TestLoggerFactory loggerFactory = new TestLoggerFactory();
+        TestLogger logger = loggerFactory.getLogger("com.acme.Service");
+        loggerFactory.setLevel("com.acme", Level.ERROR);
+
+        logger.setEnabledLevels(Level.INFO);
+        assertThat(logger.getEnabledLevels(), is(ImmutableSet.of(Level.INFO)));
+
+        logger.clear();
+        assertThat(logger.getEnabledLevels(), is(ERROR_LEVELS));
+    }
+
+    @Test
+    public void resetRestoresTheLevelsConfiguredInProperties() {
+        TestLoggerFactory loggerFactory = new TestLoggerFactory();
+        loggerFactory.setLevels(LevelConfiguration.parse("com.acme=ERROR"));
+        loggerFactory.setLevel("com.acme", Level.WARN);
+        loggerFactory.setLevel("org.other", Level.WARN);
+
+        loggerFactory.doReset();
+
+        assertThat(loggerFactory.getLevels(), is(ImmutableMap.of("com.acme", Level.ERROR)));
+        assertThat(loggerFactory.getLogger("com.acme.Service").getEnabledLevels(), is(ERROR_LEVELS));
+        assertThat(loggerFactory.getLogger("org.other.Thing").getEnabledLevels(), is(Level.enablableValueSet()));
+    }
+
     @Test
     @PrepareForTest(TestLoggerFactory.class)
     public void printLevelInvalidInOverridableProperties() throws Exception {
@@ -306,6 +402,154 @@ public class TestLoggerFactoryTests {
         }
     }
 
+    @Test
+    public void bulkMatchersCompareEventsAcrossLoggers() {
+        TestLoggerFactory loggerFactory = new TestLoggerFactory();
+        loggerFactory.getLogger("name1").info("hello");
+        loggerFactory.getLogger("name2").debug("world");
+
+        assertThat(loggerFactory.containsExactlyInAnyOrder(asList(debug("world"), info("hello"))), is(true));
+        assertThat(loggerFactory.containsExactlyInAnyOrder(asList(debug("world"))), is(false));
+        assertThat(loggerFactory.containsAll(asList(debug("world"))), is(true));
+        assertThat(loggerFactory.containsNone(asList(trace("hello"))), is(true));
+        assertThat(loggerFactory.differenceFrom(asList(debug("world"))).getUnexpected().contains(info("hello")), is(true));
+    }
+
+    @Test
+    public void levelPartitionedEventsAcrossLoggers() {
+        TestLogger logger1 = getInstance().getLogger("name1");
+        TestLogger logger2 = getInstance().getLogger("name2");
+        logger1.info("hello");
+        logger2.debug("world");
+        logger2.info("again");
+
+        assertThat(TestLoggerFactory.getLoggingEvents(Level.INFO), is(asList(info("hello"), info("again"))));
+        assertThat(TestLoggerFactory.getAllLoggingEvents(Level.DEBUG), is(asList(debug("world"))));
+        assertThat(getInstance().count(Level.INFO), is(2));
+        assertThat(getInstance().countAll(Level.TRACE), is(0));
+    }
+
+    @Test
+    public void secondaryIndexLookups() throws InterruptedException {
+        final TestLoggerFactory loggerFactory = new TestLoggerFactory();
+        loggerFactory.enableMarkerIndex();
+        loggerFactory.enableMdcIndex("request");
+        loggerFactory.enableThreadNameIndex();
+        final Marker marker = MarkerFactory.getDetachedMarker("audit");
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loggerFactory.getLogger("name1").info(marker, "hello");
+            }
+        }, "worker");
+        t.start();
+        t.join();
+        MDC.put("request", "42");
+        try {
+            loggerFactory.getLogger("name2").info("world");
+        } finally {
+            MDC.clear();
+        }
+
+        assertThat(loggerFactory.getAllLoggingEventsWithMarker(marker), is(asList(info(marker, "hello"))));
+        assertThat(loggerFactory.getAllLoggingEventsFromThread("worker"), is(asList(info(marker, "hello"))));
+        assertThat(loggerFactory.getAllLoggingEventsWithMdc("request", "42"),
+                is(asList(info(ImmutableMap.of("request", "42"), "world"))));
+        assertThat(loggerFactory.getAllLoggingEventsWithMdc("session", "42"), is(empty()));
+    }
+
+    @Test
+    public void messageSearchWithAndWithoutIndex() {
+        TestLoggerFactory unindexed = new TestLoggerFactory();
+        TestLoggerFactory indexed = new TestLoggerFactory();
+        indexed.enableMessageIndex();
+        for (TestLoggerFactory loggerFactory: asList(unindexed, indexed)) {
+            loggerFactory.getLogger("name1").info("order {} accepted", 1234);
+            loggerFactory.getLogger("name2").warn("order {} rejected", 5678);
+            loggerFactory.getLogger("name1").info("payment received");
+        }
+
+        for (TestLoggerFactory loggerFactory: asList(unindexed, indexed)) {
+            assertThat(loggerFactory.getAllLoggingEventsWithMessageContaining("1234 acc"),
+                    is(asList(info("order {} accepted", 1234))));
+            assertThat(loggerFactory.getAllLoggingEventsWithMessageContaining("order"),
+                    is(asList(info("order {} accepted", 1234), warn("order {} rejected", 5678))));
+            assertThat(loggerFactory.getAllLoggingEventsWithMessageContaining("refund"), is(empty()));
+            assertThat(loggerFactory.getAllLoggingEventsWithMessageMatching(Pattern.compile("order \\d+ rej")),
+                    is(asList(warn("order {} rejected", 5678))));
+        }
+    }
+
+    @Test
+    public void messageIndexStatistics() {
+        TestLoggerFactory loggerFactory = new TestLoggerFactory();
+        assertThat(loggerFactory.getMessageIndexStatistics().isPresent(), is(false));
+
+        loggerFactory.getLogger("name1").info("abcd");
+        loggerFactory.enableMessageIndex();
+        loggerFactory.getLogger("name1").info("bcde");
+
+        IndexStatistics statistics = loggerFactory.getMessageIndexStatistics().get();
+        assertThat(statistics.getKeys(), is(3));
+        assertThat(statistics.getPostings(), is(4L));
+        assertThat(statistics.getEstimatedBytes() > 0, is(true));
+    }
+
+    @Test
+    public void getAllLoggingEventsBetweenAcrossLoggers() {
+        TestLoggerFactory loggerFactory = new TestLoggerFactory();
+        try {
+            DateTimeUtils.setCurrentMillisFixed(1000L);
+            loggerFactory.getLogger("name1").info("hello");
+            DateTimeUtils.setCurrentMillisFixed(1200L);
+            loggerFactory.getLogger("name2").info("world");
+            DateTimeUtils.setCurrentMillisFixed(1400L);
+            loggerFactory.getLogger("name1").info("again");
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+
+        assertThat(loggerFactory.getAllLoggingEventsBetween(new Instant(1100L), new Instant(1400L)),
+                is(asList(info("world"))));
+        assertThat(loggerFactory.getAllLoggingEventsBetween(new Instant(1000L), new Instant(1401L)),
+                is(asList(info("hello"), info("world"), info("again"))));
+    }
+
+    @Test
+    public void drainToAddsEventsFromAllLoggersAndEmptiesFactoryAndLoggers() {
+        TestLoggerFactory loggerFactory = new TestLoggerFactory();
+        loggerFactory.getLogger("name1").info("hello");
+        loggerFactory.getLogger("name2").info("world");
+        List<LoggingEvent> batch = new ArrayList<>();
+
+        assertThat(loggerFactory.drainTo(batch), is(2));
+        loggerFactory.getLogger("name1").info("again");
+
+        assertThat(batch, is(asList(info("hello"), info("world"))));
+        assertThat(loggerFactory.getAllLoggingEventsFromLoggers(), is(asList(info("again"))));
+        assertThat(loggerFactory.getLoggingEventsFromLoggers(), is(asList(info("again"))));
+        assertThat(loggerFactory.getLogger("name1").getAllLoggingEvents(), is(asList(info("again"))));
+        assertThat(loggerFactory.getLogger("name1").getLoggingEvents(), is(asList(info("again"))));
+        assertThat(loggerFactory.getLogger("name2").getAllLoggingEvents(), is(empty()));
+        assertThat(loggerFactory.getEstimatedBytes(), is(loggerFactory.getLogger("name1").getEstimatedBytes()));
+    }
+
+    @Test
+    public void drainingALoggerRemovesItsEventsFromTheFactoryAndThreads() {
+        TestLoggerFactory loggerFactory = new TestLoggerFactory();
+        TestLogger logger1 = loggerFactory.getLogger("name1");
+        logger1.info("hello");
+        loggerFactory.getLogger("name2").info("world");
+        logger1.info("again");
+
+        assertThat(logger1.drain(), is(asList(info("hello"), info("again"))));
+
+        assertThat(logger1.getLoggingEvents(), is(empty()));
+        assertThat(loggerFactory.getAllLoggingEventsFromLoggers(), is(asList(info("world"))));
+        assertThat(loggerFactory.getLoggingEventsFromLoggers(), is(asList(info("world"))));
+        assertThat(loggerFactory.getEstimatedBytes(), is(loggerFactory.getLogger("name2").getEstimatedBytes()));
+    }
+
     @After
     public void resetLoggerFactory() {
         try {
@@ -5,9 +5,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.lang3.RandomStringUtils;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.Instant;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -17,6 +20,7 @@ import org.slf4j.Marker;
 
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultiset;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 
@@ -73,6 +77,7 @@ public class TestLoggerTests {
 
     @After
     public void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
         MDC.clear();
         TestLoggerFactory.reset();
         TestLoggerFactory.getInstance().setPrintLevel(Level.OFF);
@@ -789,6 +794,100 @@ public class TestLoggerTests {
         assertThat(testLogger.getLoggingEvents(), is(asList(info(ImmutableMap.of("key", "null"), message))));
     }
 
+    @Test
+    public void bulkMatchersCompareAllLoggingEventsInAnyOrder() {
+        testLogger.info("message1");
+        testLogger.error("message2");
+
+        assertTrue(testLogger.containsExactlyInAnyOrder(
+                asList(error(mdcValues, "message2"), info(mdcValues, "message1"))));
+        assertTrue(testLogger.containsAll(asList(error(mdcValues, "message2"))));
+        assertTrue(testLogger.containsNone(asList(info(mdcValues, "message2"))));
+        assertFalse(testLogger.containsNone(asList(info(mdcValues, "message1"))));
+        assertEquals(ImmutableMultiset.of(info(mdcValues, "message3")),
+                testLogger.differenceFrom(asList(
+                        error(mdcValues, "message2"), info(mdcValues, "message1"), info(mdcValues, "message3")))
+                        .getMissing());
+    }
+
+    @Test
+    public void levelPartitionedEventsAndCounts() throws Exception {
+        testLogger.info("message1");
+        testLogger.error("message2");
+        testLogger.info("message3");
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                testLogger.info("message4");
+            }
+        });
+        t.start();
+        t.join();
+
+        assertEquals(asList(info(mdcValues, "message1"), info(mdcValues, "message3")), testLogger.getLoggingEvents(INFO));
+        assertEquals(2, testLogger.count(INFO));
+        assertEquals(3, testLogger.countAll(INFO));
+        assertEquals(asList(error(mdcValues, "message2")), testLogger.getAllLoggingEvents(ERROR));
+        assertEquals(0, testLogger.countAll(WARN));
+    }
+
+    @Test
+    public void getAllLoggingEventsSnapshotAndPages() {
+        testLogger.info("message1");
+        testLogger.info("message2");
+        testLogger.info("message3");
+        List<LoggingEvent> snapshot = testLogger.getAllLoggingEventsSnapshot();
+        List<List<LoggingEvent>> pages = testLogger.getAllLoggingEventPages(2);
+        testLogger.info("message4");
+
+        assertEquals(asList(info(mdcValues, "message1"), info(mdcValues, "message2"), info(mdcValues, "message3")), snapshot);
+        assertEquals(asList(info(mdcValues, "message2"), info(mdcValues, "message3")), snapshot.subList(1, 3));
+        assertEquals(asList(
+                asList(info(mdcValues, "message1"), info(mdcValues, "message2")),
+                asList(info(mdcValues, "message3"))), pages);
+    }
+
+    @Test
+    public void getAllLoggingEventsBetween() {
+        DateTimeUtils.setCurrentMillisFixed(1000L);
+        testLogger.info("message1");
+        DateTimeUtils.setCurrentMillisFixed(2000L);
+        testLogger.info("message2");
+        DateTimeUtils.setCurrentMillisSystem();
+
+        assertEquals(asList(info(mdcValues, "message2")),
+                testLogger.getAllLoggingEventsBetween(new Instant(1500L), new Instant(2500L)));
+        assertEquals(asList(info(mdcValues, "message1"), info(mdcValues, "message2")),
+                testLogger.getAllLoggingEventsBetween(new Instant(1000L), new Instant(2001L)));
+    }
+
+    @Test
+    public void timeToLiveIsInheritedFromFactoryUnlessSetOnLogger() {
+        TestLoggerFactory factory = TestLoggerFactory.getInstance();
+        TestLogger otherLogger = factory.getLogger("other");
+        factory.setTimeToLive(1, TimeUnit.SECONDS);
+        otherLogger.setTimeToLive(10, TimeUnit.SECONDS);
+        DateTimeUtils.setCurrentMillisFixed(1000L);
+        testLogger.info("message1");
+        otherLogger.info("message1");
+        DateTimeUtils.setCurrentMillisFixed(3000L);
+        testLogger.info("message2");
+
+        assertEquals(asList(info(mdcValues, "message2")), testLogger.getAllLoggingEvents());
+        assertEquals(asList(info(mdcValues, "message2")), testLogger.getLoggingEvents());
+        assertEquals(asList(info(mdcValues, "message2")), factory.getAllLoggingEventsFromLoggers());
+        assertEquals(asList(info(mdcValues, "message1")), otherLogger.getAllLoggingEvents());
+
+        otherLogger.removeTimeToLive();
+
+        assertEquals(Collections.emptyList(), otherLogger.getAllLoggingEvents());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void timeToLiveMustBeAtLeastAMillisecond() {
+        testLogger.setTimeToLive(999, TimeUnit.MICROSECONDS);
+    }
+
     private void assertEnabledReturnsCorrectly(Level levelToTest) {
         testLogger.setEnabledLevels(levelToTest);
         assertTrue("Logger level set to " + levelToTest + " means " + levelToTest + " should be enabled",
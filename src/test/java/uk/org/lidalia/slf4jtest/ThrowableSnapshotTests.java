@@ -0,0 +1,99 @@
+package uk.org.lidalia.slf4jtest;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertSame;
+
+public class ThrowableSnapshotTests {
+
+    private final TestLoggerFactory loggerFactory = new TestLoggerFactory();
+
+    @Test
+    public void keepsTypeMessageAndCappedFramesAndCauses() {
+        Exception root = new IllegalStateException("root");
+        Exception middle = new IllegalArgumentException("middle", root);
+        Exception top = new RuntimeException("top", middle);
+
+        ThrowableSnapshot snapshot = ThrowableSnapshot.of(top, 2, 1);
+
+        assertEquals("java.lang.RuntimeException", snapshot.getClassName());
+        assertEquals("top", snapshot.getMessage());
+        assertEquals("java.lang.RuntimeException: top", snapshot.toString());
+        assertEquals(2, snapshot.getStackTrace().length);
+        assertEquals(top.getStackTrace()[0], snapshot.getStackTrace()[0]);
+        assertEquals(top.getStackTrace().length - 2, snapshot.getOmittedStackFrames());
+        ThrowableSnapshot cause = (ThrowableSnapshot) snapshot.getCause();
+        assertEquals("java.lang.IllegalArgumentException: middle", cause.toString());
+        assertThat(cause.getCause(), is(nullValue()));
+    }
+
+    @Test
+    public void dropsSuppressedThrowablesAndSurvivesCycles() {
+        Exception first = new RuntimeException("first");
+        Exception second = new RuntimeException("second", first);
+        first.initCause(second);
+        first.addSuppressed(new RuntimeException("suppressed"));
+
+        ThrowableSnapshot snapshot = ThrowableSnapshot.of(first, 10, 10);
+
+        assertEquals(0, snapshot.getSuppressed().length);
+        assertEquals("java.lang.RuntimeException: second", snapshot.getCause().toString());
+        assertThat(snapshot.getCause().getCause(), is(nullValue()));
+    }
+
+    @Test
+    public void printsAsTheOriginalWould() {
+        ThrowableSnapshot snapshot = ThrowableSnapshot.of(new RuntimeException("top", new IllegalStateException("cause")), 1, 1);
+        StringWriter printed = new StringWriter();
+
+        snapshot.printStackTrace(new PrintWriter(printed));
+
+        assertThat(printed.toString(), containsString("java.lang.RuntimeException: top"));
+        assertThat(printed.toString(), containsString("Caused by: java.lang.IllegalStateException: cause"));
+    }
+
+    @Test
+    public void factoryCapturesSnapshotsOnceEnabledAndReportsBytesSaved() {
+        TestLogger logger = loggerFactory.getLogger("name1");
+        Exception live = new RuntimeException("live");
+        logger.error("message", live);
+        loggerFactory.setThrowableSnapshots(3, 2);
+
+        logger.error("message", new RuntimeException("snapshot", new IllegalStateException("cause")));
+
+        assertSame(live, logger.getAllLoggingEvents().get(0).getThrowable().get());
+        Throwable captured = logger.getAllLoggingEvents().get(1).getThrowable().get();
+        assertThat(captured, is(instanceOf(ThrowableSnapshot.class)));
+        assertEquals("snapshot", captured.getMessage());
+        assertThat(loggerFactory.getEstimatedThrowableBytesSaved(), is(greaterThan(0L)));
+
+        loggerFactory.retainLiveThrowables();
+        logger.error("message", live);
+
+        assertSame(live, logger.getAllLoggingEvents().get(2).getThrowable().get());
+    }
+
+    @Test
+    public void resetRetainsLiveThrowablesAgain() {
+        loggerFactory.setThrowableSnapshots(1, 1);
+        loggerFactory.getLogger("name1").error("message", new RuntimeException());
+
+        loggerFactory.doReset();
+        loggerFactory.getLogger("name1").error("message", new RuntimeException());
+
+        assertThat(loggerFactory.getAllLoggingEventsFromLoggers().get(0).getThrowable().get(),
+                is(not(instanceOf(ThrowableSnapshot.class))));
+        assertEquals(0, loggerFactory.getEstimatedThrowableBytesSaved());
+    }
+}